@@ -0,0 +1,53 @@
+package net.unit8.jmeter.protocol.websocket.codec;
+
+/**
+ * An inbound frame decoded by a codec.
+ *
+ * @author kawasima
+ */
+public class CodecFrame {
+    /** The protocol handshake is complete. */
+    public static final int CONNECTED = 0;
+    /** A message not correlated to a request, e.g. from a subscription. */
+    public static final int MESSAGE = 1;
+    /** A reply or an acknowledgement to a request. */
+    public static final int REPLY = 2;
+    /** An error reported by the server. */
+    public static final int ERROR = 3;
+    /** A heartbeat or another frame handled by the codec itself. */
+    public static final int CONTROL = 4;
+
+    private final int type;
+    private final String id;
+    private final String payload;
+    private final String reply;
+
+    /**
+     * @param type    the type of the frame
+     * @param id      the correlation id, or null
+     * @param payload the application payload, or null
+     * @param reply   a frame to send back right away (pong, ack...), or null
+     */
+    public CodecFrame(int type, String id, String payload, String reply) {
+        this.type = type;
+        this.id = id;
+        this.payload = payload;
+        this.reply = reply;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public String getReply() {
+        return reply;
+    }
+}
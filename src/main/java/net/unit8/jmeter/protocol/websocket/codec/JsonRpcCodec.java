@@ -0,0 +1,159 @@
+package net.unit8.jmeter.protocol.websocket.codec;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * JSON-RPC 2.0 over WebSocket.
+ *
+ * The payload of the sampler is sent as the params of a request, and the
+ * response with the same id is correlated to it. Responses are correlated
+ * by scanning the top-level members of the object, without building a tree.
+ * The requests are never batched, so a batch response isn't correlated.
+ *
+ * Options:
+ * <ul>
+ *     <li>method: the method of the requests</li>
+ * </ul>
+ *
+ * @author kawasima
+ */
+public class JsonRpcCodec implements MessageCodec {
+    private String methodMember;
+
+    @Override
+    public String getName() {
+        return "json-rpc"; // $NON-NLS-1$
+    }
+
+    @Override
+    public void configure(Properties options) {
+        methodMember = "{\"jsonrpc\":\"2.0\",\"method\":\"" + options.getProperty("method", "") + "\"";
+    }
+
+    @Override
+    public List<String> open() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public String encode(String payload, String id) {
+        StringBuilder sb = new StringBuilder(payload.length() + methodMember.length() + 32)
+                .append(methodMember);
+        if (payload.length() > 0) {
+            sb.append(",\"params\":").append(payload);
+        }
+        return sb.append(",\"id\":").append(id).append('}').toString();
+    }
+
+    @Override
+    public CodecFrame decode(String frame) {
+        if (frame.trim().startsWith("[")) {
+            return new CodecFrame(CodecFrame.CONTROL, null, frame, null);
+        }
+        String id = null;
+        boolean hasMethod = false;
+        boolean hasError = false;
+
+        int depth = 0;
+        int i = 0;
+        int length = frame.length();
+        while (i < length) {
+            char c = frame.charAt(i);
+            if (c == '"') {
+                int end = skipString(frame, i);
+                if (depth == 1 && isMemberName(frame, end)) {
+                    String name = frame.substring(i + 1, end - 1);
+                    if ("id".equals(name)) {
+                        id = readScalar(frame, frame.indexOf(':', end) + 1);
+                    } else if ("method".equals(name)) {
+                        hasMethod = true;
+                    } else if ("error".equals(name)) {
+                        hasError = true;
+                    }
+                }
+                i = end;
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+            i++;
+        }
+
+        if (hasError) {
+            return new CodecFrame(CodecFrame.ERROR, id, frame, null);
+        }
+        if (hasMethod) {
+            // A notification or a request from the server
+            return new CodecFrame(CodecFrame.MESSAGE, null, frame, null);
+        }
+        return new CodecFrame(CodecFrame.REPLY, id, frame, null);
+    }
+
+    /*
+     * Returns the index after the closing quote of the string starting at start.
+     */
+    private static int skipString(String s, int start) {
+        int i = start + 1;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '"') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return s.length();
+    }
+
+    private static boolean isMemberName(String s, int end) {
+        int i = end;
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i < s.length() && s.charAt(i) == ':';
+    }
+
+    /*
+     * Reads a number or a string value. Returns null for null or other values.
+     */
+    private static String readScalar(String s, int start) {
+        int i = start;
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        if (i >= s.length()) {
+            return null;
+        }
+        if (s.charAt(i) == '"') {
+            int end = skipString(s, i);
+            return s.substring(i + 1, end - 1);
+        }
+        int end = i;
+        while (end < s.length() && (Character.isDigit(s.charAt(end)) || s.charAt(end) == '-')) {
+            end++;
+        }
+        return end > i ? s.substring(i, end) : null;
+    }
+
+    @Override
+    public long getHeartbeatInterval() {
+        return 0L;
+    }
+
+    @Override
+    public String heartbeat() {
+        return null;
+    }
+}
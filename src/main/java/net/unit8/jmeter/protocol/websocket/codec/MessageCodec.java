@@ -0,0 +1,63 @@
+package net.unit8.jmeter.protocol.websocket.codec;
+
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Frames application messages in a subprotocol carried over WebSocket.
+ *
+ * A codec instance belongs to a single connection, and may keep the state
+ * of the protocol (handshake, subscriptions, negotiated heartbeats).
+ * Implementations are registered as services in
+ * META-INF/services/net.unit8.jmeter.protocol.websocket.codec.MessageCodec
+ * and must have a public no-arg constructor.
+ *
+ * @author kawasima
+ */
+public interface MessageCodec {
+    /**
+     * @return the name used to select the codec in the sampler
+     */
+    String getName();
+
+    /**
+     * Configures the codec with the options of the sampler.
+     */
+    void configure(Properties options);
+
+    /**
+     * @return the frames to send right after the WebSocket handshake
+     */
+    List<String> open();
+
+    /**
+     * @return true once the protocol handshake is complete and messages can be sent
+     */
+    boolean isReady();
+
+    /**
+     * Frames an outbound message.
+     *
+     * @param payload the application payload
+     * @param id      the correlation id of the message
+     * @return the frame to send
+     */
+    String encode(String payload, String id);
+
+    /**
+     * Decodes an inbound frame.
+     *
+     * @return the decoded frame, or null if the frame needs no handling
+     */
+    CodecFrame decode(String frame);
+
+    /**
+     * @return the interval of the heartbeats sent by the client in ms, or 0 for none
+     */
+    long getHeartbeatInterval();
+
+    /**
+     * @return the heartbeat frame sent by the client
+     */
+    String heartbeat();
+}
@@ -0,0 +1,83 @@
+package net.unit8.jmeter.protocol.websocket.codec;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ServiceLoader;
+
+/**
+ * Looks up the codecs registered as services.
+ *
+ * @author kawasima
+ */
+public final class MessageCodecs {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static Map<String, Class<? extends MessageCodec>> codecs;
+
+    private MessageCodecs() {
+    }
+
+    private static synchronized Map<String, Class<? extends MessageCodec>> getCodecs() {
+        if (codecs == null) {
+            Map<String, Class<? extends MessageCodec>> found = new HashMap<String, Class<? extends MessageCodec>>();
+            for (MessageCodec codec : ServiceLoader.load(MessageCodec.class, MessageCodecs.class.getClassLoader())) {
+                found.put(codec.getName(), codec.getClass());
+            }
+            codecs = Collections.unmodifiableMap(found);
+        }
+        return codecs;
+    }
+
+    /**
+     * @return the names of the registered codecs
+     */
+    public static String[] getNames() {
+        return getCodecs().keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Creates a codec for a connection.
+     *
+     * @param name    the name of the codec
+     * @param options the options, one key=value per line
+     * @return the codec, or null if the name is empty
+     * @throws IllegalArgumentException if no codec has the name
+     */
+    public static MessageCodec create(String name, String options) {
+        if (name == null || name.length() == 0) {
+            return null;
+        }
+        Class<? extends MessageCodec> codecClass = getCodecs().get(name);
+        if (codecClass == null) {
+            throw new IllegalArgumentException("Unknown codec: " + name);
+        }
+        try {
+            MessageCodec codec = codecClass.newInstance();
+            codec.configure(parseOptions(options));
+            return codec;
+        } catch (InstantiationException e) {
+            throw new IllegalArgumentException("Can't create codec " + name, e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Can't create codec " + name, e);
+        }
+    }
+
+    private static Properties parseOptions(String options) {
+        Properties properties = new Properties();
+        if (options != null) {
+            try {
+                properties.load(new StringReader(options));
+            } catch (IOException e) {
+                log.warn("Can't read codec options: " + e.getMessage());
+            }
+        }
+        return properties;
+    }
+}
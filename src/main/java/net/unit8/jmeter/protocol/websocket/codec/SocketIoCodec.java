@@ -0,0 +1,156 @@
+package net.unit8.jmeter.protocol.websocket.codec;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Socket.IO v5 over Engine.IO v4, WebSocket transport.
+ *
+ * The codec answers the Engine.IO open packet with a namespace CONNECT and
+ * the server pings with pongs. Messages are emitted as events with an ack id,
+ * and the ack of the server is correlated to the request. Binary packets
+ * are not supported.
+ *
+ * The URL must select the transport, e.g. ws://host/socket.io/?EIO=4&amp;transport=websocket
+ *
+ * Options:
+ * <ul>
+ *     <li>namespace: the namespace to connect (default /)</li>
+ *     <li>event: the name of the emitted events (default message)</li>
+ *     <li>auth: JSON object sent with the namespace CONNECT</li>
+ * </ul>
+ *
+ * @author kawasima
+ */
+public class SocketIoCodec implements MessageCodec {
+    // Engine.IO packet types
+    private static final char EIO_OPEN = '0';
+    private static final char EIO_CLOSE = '1';
+    private static final char EIO_PING = '2';
+    private static final char EIO_MESSAGE = '4';
+
+    // Socket.IO packet types
+    private static final char SIO_CONNECT = '0';
+    private static final char SIO_DISCONNECT = '1';
+    private static final char SIO_EVENT = '2';
+    private static final char SIO_ACK = '3';
+    private static final char SIO_CONNECT_ERROR = '4';
+
+    private String namespacePrefix;
+    private String eventPrefix;
+    private String auth;
+
+    private volatile boolean ready = false;
+
+    @Override
+    public String getName() {
+        return "socket.io"; // $NON-NLS-1$
+    }
+
+    @Override
+    public void configure(Properties options) {
+        String namespace = options.getProperty("namespace", "/");
+        namespacePrefix = "/".equals(namespace) ? "" : namespace + ",";
+        eventPrefix = "[\"" + options.getProperty("event", "message") + "\"";
+        auth = options.getProperty("auth", "");
+    }
+
+    @Override
+    public List<String> open() {
+        // The namespace is connected when the server sends the open packet.
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public String encode(String payload, String id) {
+        StringBuilder sb = new StringBuilder(payload.length() + eventPrefix.length() + namespacePrefix.length() + 16)
+                .append(EIO_MESSAGE).append(SIO_EVENT)
+                .append(namespacePrefix)
+                .append(id)
+                .append(eventPrefix);
+        if (payload.length() > 0) {
+            sb.append(',').append(payload);
+        }
+        return sb.append(']').toString();
+    }
+
+    @Override
+    public CodecFrame decode(String frame) {
+        if (frame.length() == 0) {
+            return null;
+        }
+        switch (frame.charAt(0)) {
+            case EIO_OPEN:
+                return new CodecFrame(CodecFrame.CONTROL, null, frame.substring(1),
+                        "" + EIO_MESSAGE + SIO_CONNECT + namespacePrefix + auth);
+            case EIO_PING:
+                return new CodecFrame(CodecFrame.CONTROL, null, null, "3" + frame.substring(1));
+            case EIO_CLOSE:
+                return new CodecFrame(CodecFrame.ERROR, null, "Engine.IO close", null);
+            case EIO_MESSAGE:
+                return decodePacket(frame);
+            default:
+                // pong, noop and upgrade packets
+                return null;
+        }
+    }
+
+    private CodecFrame decodePacket(String frame) {
+        if (frame.length() < 2) {
+            return null;
+        }
+        char type = frame.charAt(1);
+        int pos = 2;
+        if (frame.startsWith("/", pos)) {
+            int comma = frame.indexOf(',', pos);
+            if (comma < 0) {
+                // "40/admin" has no data after the namespace
+                pos = frame.length();
+            } else {
+                pos = comma + 1;
+            }
+        }
+        int idStart = pos;
+        while (pos < frame.length() && Character.isDigit(frame.charAt(pos))) {
+            pos++;
+        }
+        String id = pos > idStart ? frame.substring(idStart, pos) : null;
+        String data = frame.substring(pos);
+
+        switch (type) {
+            case SIO_CONNECT:
+                ready = true;
+                return new CodecFrame(CodecFrame.CONNECTED, null, data, null);
+            case SIO_EVENT:
+                // The server asks for an ack when the event has an id.
+                String reply = (id == null) ? null : "" + EIO_MESSAGE + SIO_ACK + namespacePrefix + id + "[]";
+                return new CodecFrame(CodecFrame.MESSAGE, null, data, reply);
+            case SIO_ACK:
+                return new CodecFrame(CodecFrame.REPLY, id, data, null);
+            case SIO_CONNECT_ERROR:
+                return new CodecFrame(CodecFrame.ERROR, null, data, null);
+            case SIO_DISCONNECT:
+                ready = false;
+                return new CodecFrame(CodecFrame.ERROR, null, "Socket.IO disconnect", null);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public long getHeartbeatInterval() {
+        // Engine.IO v4 servers send the pings.
+        return 0L;
+    }
+
+    @Override
+    public String heartbeat() {
+        return null;
+    }
+}
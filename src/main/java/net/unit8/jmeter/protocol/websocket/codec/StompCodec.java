@@ -0,0 +1,272 @@
+package net.unit8.jmeter.protocol.websocket.codec;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * STOMP 1.2 over WebSocket.
+ *
+ * Messages are sent with SEND frames carrying the correlation id in the
+ * receipt and correlation-id headers. RECEIPT frames and MESSAGE frames
+ * carrying a correlation-id are correlated to the request.
+ *
+ * Options:
+ * <ul>
+ *     <li>host: virtual host of the CONNECT frame (default /)</li>
+ *     <li>login, passcode: credentials of the CONNECT frame</li>
+ *     <li>heart-beat: heartbeats offered by the client, in ms (default 10000,10000)</li>
+ *     <li>destination: destination of the SEND frames</li>
+ *     <li>content-type: content type of the SEND frames (default text/plain)</li>
+ *     <li>subscribe: destination to subscribe once connected</li>
+ *     <li>ack: ack mode of the subscription, auto or client-individual (default auto)</li>
+ * </ul>
+ *
+ * @author kawasima
+ */
+public class StompCodec implements MessageCodec {
+    private static final String NULL = "\u0000";
+    private static final String SUBSCRIPTION_ID = "sub-0"; // $NON-NLS-1$
+
+    private String host;
+    private String login;
+    private String passcode;
+    private long clientHeartbeat;
+    private long serverHeartbeat;
+    private String destination;
+    private String contentType;
+    private String subscribe;
+    private String ackMode;
+
+    private volatile boolean ready = false;
+    private volatile long heartbeatInterval = 0L;
+
+    @Override
+    public String getName() {
+        return "stomp"; // $NON-NLS-1$
+    }
+
+    @Override
+    public void configure(Properties options) {
+        host = options.getProperty("host", "/");
+        login = options.getProperty("login");
+        passcode = options.getProperty("passcode");
+        String[] heartbeat = options.getProperty("heart-beat", "10000,10000").split(",");
+        clientHeartbeat = parseLong(heartbeat[0]);
+        serverHeartbeat = heartbeat.length > 1 ? parseLong(heartbeat[1]) : 0L;
+        destination = options.getProperty("destination", "");
+        contentType = options.getProperty("content-type", "text/plain");
+        subscribe = options.getProperty("subscribe");
+        ackMode = options.getProperty("ack", "auto");
+    }
+
+    @Override
+    public List<String> open() {
+        StringBuilder frame = new StringBuilder("CONNECT\n")
+                .append("accept-version:1.2\n")
+                .append("host:").append(host).append('\n')
+                .append("heart-beat:").append(clientHeartbeat).append(',').append(serverHeartbeat).append('\n');
+        if (login != null) {
+            frame.append("login:").append(login).append('\n');
+        }
+        if (passcode != null) {
+            frame.append("passcode:").append(passcode).append('\n');
+        }
+        frame.append('\n').append(NULL);
+        List<String> frames = new ArrayList<String>(1);
+        frames.add(frame.toString());
+        return frames;
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public String encode(String payload, String id) {
+        return new StringBuilder(payload.length() + destination.length() + 96)
+                .append("SEND\n")
+                .append("destination:").append(escape(destination)).append('\n')
+                .append("content-type:").append(escape(contentType)).append('\n')
+                .append("receipt:").append(id).append('\n')
+                .append("correlation-id:").append(id).append('\n')
+                .append('\n')
+                .append(payload)
+                .append(NULL)
+                .toString();
+    }
+
+    @Override
+    public CodecFrame decode(String frame) {
+        // Heartbeats (EOLs) may come alone or before a frame.
+        int commandStart = 0;
+        while (commandStart < frame.length()
+                && (frame.charAt(commandStart) == '\n' || frame.charAt(commandStart) == '\r')) {
+            commandStart++;
+        }
+        int commandEnd = frame.indexOf('\n', commandStart);
+        if (commandEnd < 0) {
+            return null;
+        }
+        String command = frame.substring(commandStart, commandEnd).trim();
+        int headersEnd = blankLine(frame, commandEnd + 1);
+        Map<String, String> headers = parseHeaders(frame,
+                commandEnd + 1, headersEnd < 0 ? frame.length() : headersEnd, !"CONNECTED".equals(command));
+        String body = "";
+        if (headersEnd >= 0) {
+            int bodyStart = headersEnd + (frame.charAt(headersEnd) == '\r' ? 2 : 1);
+            int bodyEnd = frame.indexOf(NULL, bodyStart);
+            body = frame.substring(bodyStart, bodyEnd < 0 ? frame.length() : bodyEnd);
+        }
+
+        if ("CONNECTED".equals(command)) {
+            negotiateHeartbeat(headers.get("heart-beat"));
+            ready = true;
+            String reply = null;
+            if (subscribe != null && subscribe.length() > 0) {
+                reply = "SUBSCRIBE\n"
+                        + "id:" + SUBSCRIPTION_ID + "\n"
+                        + "destination:" + escape(subscribe) + "\n"
+                        + "ack:" + ackMode + "\n\n" + NULL;
+            }
+            return new CodecFrame(CodecFrame.CONNECTED, null, body, reply);
+        }
+        if ("MESSAGE".equals(command)) {
+            String reply = null;
+            String ack = headers.get("ack");
+            if (ack != null && !"auto".equals(ackMode)) {
+                reply = "ACK\nid:" + escape(ack) + "\n\n" + NULL;
+            }
+            int type = headers.containsKey("correlation-id") ? CodecFrame.REPLY : CodecFrame.MESSAGE;
+            return new CodecFrame(type, headers.get("correlation-id"), body, reply);
+        }
+        if ("RECEIPT".equals(command)) {
+            return new CodecFrame(CodecFrame.REPLY, headers.get("receipt-id"), body, null);
+        }
+        if ("ERROR".equals(command)) {
+            String message = headers.get("message");
+            return new CodecFrame(CodecFrame.ERROR, headers.get("receipt-id"),
+                    message != null ? message + "\n" + body : body, null);
+        }
+        return new CodecFrame(CodecFrame.CONTROL, null, body, null);
+    }
+
+    /*
+     * The client sends heartbeats every max(cx, sy) ms if both are non-zero.
+     */
+    private void negotiateHeartbeat(String value) {
+        if (value == null || clientHeartbeat == 0) {
+            heartbeatInterval = 0L;
+            return;
+        }
+        String[] heartbeat = value.split(",");
+        long serverWants = heartbeat.length > 1 ? parseLong(heartbeat[1]) : 0L;
+        heartbeatInterval = serverWants == 0 ? 0L : Math.max(clientHeartbeat, serverWants);
+    }
+
+    @Override
+    public long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    @Override
+    public String heartbeat() {
+        return "\n";
+    }
+
+    /*
+     * Finds the blank line ending the headers, an EOL being \n or \r\n.
+     *
+     * @return the index of the blank line, or -1 if there is none
+     */
+    private static int blankLine(String frame, int lineStart) {
+        while (lineStart < frame.length()) {
+            if (frame.charAt(lineStart) == '\n' || frame.startsWith("\r\n", lineStart)) {
+                return lineStart;
+            }
+            int lineEnd = frame.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                return -1;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return -1;
+    }
+
+    private static Map<String, String> parseHeaders(String frame, int start, int end, boolean unescape) {
+        Map<String, String> headers = new HashMap<String, String>();
+        int lineStart = start;
+        while (lineStart < end) {
+            int lineEnd = frame.indexOf('\n', lineStart);
+            if (lineEnd < 0 || lineEnd > end) {
+                lineEnd = end;
+            }
+            int colon = frame.indexOf(':', lineStart);
+            if (colon > lineStart && colon < lineEnd) {
+                String name = frame.substring(lineStart, colon);
+                String value = frame.substring(colon + 1, lineEnd);
+                if (value.endsWith("\r")) {
+                    value = value.substring(0, value.length() - 1);
+                }
+                // The first occurrence of a repeated header wins.
+                if (!headers.containsKey(name)) {
+                    headers.put(name, unescape ? unescape(value) : value);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return headers;
+    }
+
+    static String escape(String value) {
+        if (value.indexOf('\\') < 0 && value.indexOf(':') < 0
+                && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case ':':  sb.append("\\c"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default:   sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                switch (next) {
+                    case 'c': sb.append(':'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    default:  sb.append(next);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+}
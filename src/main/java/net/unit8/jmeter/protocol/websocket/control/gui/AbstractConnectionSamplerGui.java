@@ -0,0 +1,100 @@
+package net.unit8.jmeter.protocol.websocket.control.gui;
+
+import net.unit8.jmeter.protocol.websocket.sampler.AbstractConnectionSampler;
+import net.unit8.jmeter.protocol.websocket.sampler.ConnectionRegistry;
+import org.apache.jmeter.gui.util.VerticalPanel;
+import org.apache.jmeter.samplers.gui.AbstractSamplerGui;
+import org.apache.jmeter.testelement.TestElement;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Base GUI of the samplers working on a named connection.
+ *
+ * Subclasses call {@link #init()} from their constructor,
+ * and add their own fields in {@link #createOptionsPanel()}.
+ *
+ * @author kawasima
+ */
+public abstract class AbstractConnectionSamplerGui extends AbstractSamplerGui {
+    private JTextField connectionName;
+    private JComboBox  scope;
+
+    @Override
+    public String getLabelResource() {
+        throw new IllegalStateException("This shouldn't be called"); //$NON-NLS-1$
+    }
+
+    @Override
+    public void configure(TestElement element) {
+        super.configure(element);
+        connectionName.setText(element.getPropertyAsString(AbstractConnectionSampler.CONNECTION_NAME));
+        scope.setSelectedItem(element.getPropertyAsString(AbstractConnectionSampler.SCOPE, ConnectionRegistry.SCOPE_THREAD));
+    }
+
+    @Override
+    public void modifyTestElement(TestElement element) {
+        configureTestElement(element);
+        element.setProperty(AbstractConnectionSampler.CONNECTION_NAME, connectionName.getText());
+        element.setProperty(AbstractConnectionSampler.SCOPE, (String) scope.getSelectedItem());
+    }
+
+    protected TestElement initTestElement(TestElement element) {
+        element.setName(getName());
+        element.setProperty(TestElement.GUI_CLASS, this.getClass().getName());
+        element.setProperty(TestElement.TEST_CLASS, element.getClass().getName());
+        modifyTestElement(element);
+        return element;
+    }
+
+    /**
+     * @return the panel holding the fields specific to the sampler
+     */
+    protected abstract JPanel createOptionsPanel();
+
+    private JPanel getConnectionPanel() {
+        connectionName = new JTextField(15);
+        JLabel connectionNameLabel = new JLabel(WebSocketSamplerGui.getResString("websocket_connection_name")); // $NON-NLS-1$
+        connectionNameLabel.setLabelFor(connectionName);
+
+        scope = new JComboBox(ConnectionRegistry.SCOPES);
+        JLabel scopeLabel = new JLabel(WebSocketSamplerGui.getResString("websocket_connection_scope")); // $NON-NLS-1$
+        scopeLabel.setLabelFor(scope);
+
+        JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        panel.add(connectionNameLabel);
+        panel.add(connectionName);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(scopeLabel);
+        panel.add(scope);
+        panel.setMinimumSize(panel.getPreferredSize());
+
+        return panel;
+    }
+
+    protected void init() {
+        setLayout(new BorderLayout(0, 5));
+        setBorder(makeBorder());
+        add(makeTitlePanel(), BorderLayout.NORTH);
+
+        VerticalPanel mainPanel = new VerticalPanel();
+        mainPanel.add(getConnectionPanel());
+        mainPanel.add(createOptionsPanel());
+        add(mainPanel, BorderLayout.CENTER);
+    }
+
+    /**
+     * Creates a panel with a label on the left of the component.
+     */
+    protected static JPanel labeled(String resourceKey, JComponent component) {
+        JLabel label = new JLabel(WebSocketSamplerGui.getResString(resourceKey));
+        label.setLabelFor(component);
+
+        JPanel panel = new JPanel(new BorderLayout(5, 0));
+        panel.add(label, BorderLayout.WEST);
+        panel.add(component, BorderLayout.CENTER);
+        return panel;
+    }
+}
@@ -0,0 +1,61 @@
+package net.unit8.jmeter.protocol.websocket.control.gui;
+
+import net.unit8.jmeter.protocol.websocket.sampler.WebSocketCloseSampler;
+import org.apache.jmeter.gui.util.VerticalPanel;
+import org.apache.jmeter.testelement.TestElement;
+
+import javax.swing.*;
+
+/**
+ * GUI for WebSocketCloseSampler
+ *
+ * @author kawasima
+ */
+public class WebSocketCloseSamplerGui extends AbstractConnectionSamplerGui {
+    private JTextField closeCode;
+    private JTextField closeReason;
+    private JTextField closeTimeout;
+
+    public WebSocketCloseSamplerGui() {
+        init();
+    }
+
+    @Override
+    public String getStaticLabel() {
+        return WebSocketSamplerGui.getResString("websocket_close_title");  //$NON-NLS-1$
+    }
+
+    @Override
+    public void configure(TestElement element) {
+        super.configure(element);
+        closeCode.setText(element.getPropertyAsString(WebSocketCloseSampler.CLOSE_CODE));
+        closeReason.setText(element.getPropertyAsString(WebSocketCloseSampler.CLOSE_REASON));
+        closeTimeout.setText(element.getPropertyAsString(WebSocketCloseSampler.CLOSE_TIMEOUT));
+    }
+
+    @Override
+    public TestElement createTestElement() {
+        return initTestElement(new WebSocketCloseSampler());
+    }
+
+    @Override
+    public void modifyTestElement(TestElement element) {
+        super.modifyTestElement(element);
+        element.setProperty(WebSocketCloseSampler.CLOSE_CODE, closeCode.getText());
+        element.setProperty(WebSocketCloseSampler.CLOSE_REASON, closeReason.getText());
+        element.setProperty(WebSocketCloseSampler.CLOSE_TIMEOUT, closeTimeout.getText());
+    }
+
+    @Override
+    protected JPanel createOptionsPanel() {
+        closeCode = new JTextField(6);
+        closeReason = new JTextField(20);
+        closeTimeout = new JTextField(6);
+
+        VerticalPanel panel = new VerticalPanel();
+        panel.add(labeled("websocket_close_code", closeCode)); // $NON-NLS-1$
+        panel.add(labeled("websocket_close_reason", closeReason)); // $NON-NLS-1$
+        panel.add(labeled("websocket_close_timeout", closeTimeout)); // $NON-NLS-1$
+        return panel;
+    }
+}
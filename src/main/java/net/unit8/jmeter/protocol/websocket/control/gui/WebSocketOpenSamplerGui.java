@@ -0,0 +1,61 @@
+package net.unit8.jmeter.protocol.websocket.control.gui;
+
+import net.unit8.jmeter.protocol.websocket.sampler.WebSocketOpenSampler;
+import org.apache.jmeter.gui.util.VerticalPanel;
+import org.apache.jmeter.testelement.TestElement;
+
+import javax.swing.*;
+
+/**
+ * GUI for WebSocketOpenSampler
+ *
+ * @author kawasima
+ */
+public class WebSocketOpenSamplerGui extends AbstractConnectionSamplerGui {
+    private JTextField url;
+    private JTextField connectTimeout;
+    private JTextField inboundCapacity;
+
+    public WebSocketOpenSamplerGui() {
+        init();
+    }
+
+    @Override
+    public String getStaticLabel() {
+        return WebSocketSamplerGui.getResString("websocket_open_title");  //$NON-NLS-1$
+    }
+
+    @Override
+    public void configure(TestElement element) {
+        super.configure(element);
+        url.setText(element.getPropertyAsString(WebSocketOpenSampler.URL));
+        connectTimeout.setText(element.getPropertyAsString(WebSocketOpenSampler.CONNECT_TIMEOUT));
+        inboundCapacity.setText(element.getPropertyAsString(WebSocketOpenSampler.INBOUND_CAPACITY));
+    }
+
+    @Override
+    public TestElement createTestElement() {
+        return initTestElement(new WebSocketOpenSampler());
+    }
+
+    @Override
+    public void modifyTestElement(TestElement element) {
+        super.modifyTestElement(element);
+        element.setProperty(WebSocketOpenSampler.URL, url.getText());
+        element.setProperty(WebSocketOpenSampler.CONNECT_TIMEOUT, connectTimeout.getText());
+        element.setProperty(WebSocketOpenSampler.INBOUND_CAPACITY, inboundCapacity.getText());
+    }
+
+    @Override
+    protected JPanel createOptionsPanel() {
+        url = new JTextField(40);
+        connectTimeout = new JTextField(6);
+        inboundCapacity = new JTextField(6);
+
+        VerticalPanel panel = new VerticalPanel();
+        panel.add(labeled("websocket_url", url)); // $NON-NLS-1$
+        panel.add(labeled("websocket_connect_timeout", connectTimeout)); // $NON-NLS-1$
+        panel.add(labeled("websocket_inbound_capacity", inboundCapacity)); // $NON-NLS-1$
+        return panel;
+    }
+}
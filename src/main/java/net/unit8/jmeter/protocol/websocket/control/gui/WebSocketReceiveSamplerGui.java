@@ -0,0 +1,73 @@
+package net.unit8.jmeter.protocol.websocket.control.gui;
+
+import net.unit8.jmeter.protocol.websocket.sampler.MessageCollector;
+import net.unit8.jmeter.protocol.websocket.sampler.WebSocketReceiveSampler;
+import org.apache.jmeter.gui.util.VerticalPanel;
+import org.apache.jmeter.testelement.TestElement;
+
+import javax.swing.*;
+
+/**
+ * GUI for WebSocketReceiveSampler
+ *
+ * @author kawasima
+ */
+public class WebSocketReceiveSamplerGui extends AbstractConnectionSamplerGui {
+    private JTextArea  recvMessage;
+    private JComboBox  recvMode;
+    private JTextField recvCount;
+    private JTextField recvTerminator;
+    private JTextField recvTimeout;
+
+    public WebSocketReceiveSamplerGui() {
+        init();
+    }
+
+    @Override
+    public String getStaticLabel() {
+        return WebSocketSamplerGui.getResString("websocket_receive_title");  //$NON-NLS-1$
+    }
+
+    @Override
+    public void configure(TestElement element) {
+        super.configure(element);
+        recvMessage.setText(element.getPropertyAsString(WebSocketReceiveSampler.RECV_MESSAGE));
+        recvMode.setSelectedItem(element.getPropertyAsString(WebSocketReceiveSampler.RECV_MODE, MessageCollector.MODE_FIRST));
+        recvCount.setText(element.getPropertyAsString(WebSocketReceiveSampler.RECV_COUNT));
+        recvTerminator.setText(element.getPropertyAsString(WebSocketReceiveSampler.RECV_TERMINATOR));
+        recvTimeout.setText(element.getPropertyAsString(WebSocketReceiveSampler.RECV_TIMEOUT));
+    }
+
+    @Override
+    public TestElement createTestElement() {
+        return initTestElement(new WebSocketReceiveSampler());
+    }
+
+    @Override
+    public void modifyTestElement(TestElement element) {
+        super.modifyTestElement(element);
+        element.setProperty(WebSocketReceiveSampler.RECV_MESSAGE, recvMessage.getText());
+        element.setProperty(WebSocketReceiveSampler.RECV_MODE, (String) recvMode.getSelectedItem());
+        element.setProperty(WebSocketReceiveSampler.RECV_COUNT, recvCount.getText());
+        element.setProperty(WebSocketReceiveSampler.RECV_TERMINATOR, recvTerminator.getText());
+        element.setProperty(WebSocketReceiveSampler.RECV_TIMEOUT, recvTimeout.getText());
+    }
+
+    @Override
+    protected JPanel createOptionsPanel() {
+        recvMessage = new JTextArea(3, 0);
+        recvMessage.setLineWrap(true);
+        recvMode = new JComboBox(MessageCollector.MODES);
+        recvCount = new JTextField(4);
+        recvTerminator = new JTextField(15);
+        recvTimeout = new JTextField(6);
+
+        VerticalPanel panel = new VerticalPanel();
+        panel.add(labeled("websocket_recv_message", recvMessage)); // $NON-NLS-1$
+        panel.add(labeled("websocket_recv_mode", recvMode)); // $NON-NLS-1$
+        panel.add(labeled("websocket_recv_count", recvCount)); // $NON-NLS-1$
+        panel.add(labeled("websocket_recv_terminator", recvTerminator)); // $NON-NLS-1$
+        panel.add(labeled("websocket_recv_timeout", recvTimeout)); // $NON-NLS-1$
+        return panel;
+    }
+}
@@ -0,0 +1,89 @@
+package net.unit8.jmeter.protocol.websocket.control.gui;
+
+import net.unit8.jmeter.protocol.websocket.sampler.WebSocketReplaySampler;
+import org.apache.jmeter.gui.util.VerticalPanel;
+import org.apache.jmeter.samplers.gui.AbstractSamplerGui;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.property.BooleanProperty;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * GUI for WebSocketReplaySampler
+ *
+ * @author kawasima
+ */
+public class WebSocketReplaySamplerGui extends AbstractSamplerGui {
+    private JTextField url;
+    private JTextField logFile;
+    private JTextField speed;
+    private JCheckBox  preserveStart;
+    private JTextField connectTimeout;
+
+    public WebSocketReplaySamplerGui() {
+        init();
+    }
+
+    @Override
+    public String getLabelResource() {
+        throw new IllegalStateException("This shouldn't be called"); //$NON-NLS-1$
+    }
+
+    @Override
+    public String getStaticLabel() {
+        return WebSocketSamplerGui.getResString("websocket_replay_title");  //$NON-NLS-1$
+    }
+
+    @Override
+    public void configure(TestElement element) {
+        super.configure(element);
+        url.setText(element.getPropertyAsString(WebSocketReplaySampler.URL));
+        logFile.setText(element.getPropertyAsString(WebSocketReplaySampler.LOG_FILE));
+        speed.setText(element.getPropertyAsString(WebSocketReplaySampler.SPEED));
+        preserveStart.setSelected(element.getPropertyAsBoolean(WebSocketReplaySampler.PRESERVE_START));
+        connectTimeout.setText(element.getPropertyAsString(WebSocketReplaySampler.CONNECT_TIMEOUT));
+    }
+
+    @Override
+    public TestElement createTestElement() {
+        WebSocketReplaySampler element = new WebSocketReplaySampler();
+
+        element.setName(getName());
+        element.setProperty(TestElement.GUI_CLASS, this.getClass().getName());
+        element.setProperty(TestElement.TEST_CLASS, element.getClass().getName());
+
+        modifyTestElement(element);
+        return element;
+    }
+
+    @Override
+    public void modifyTestElement(TestElement element) {
+        configureTestElement(element);
+        element.setProperty(WebSocketReplaySampler.URL, url.getText());
+        element.setProperty(WebSocketReplaySampler.LOG_FILE, logFile.getText());
+        element.setProperty(WebSocketReplaySampler.SPEED, speed.getText());
+        element.setProperty(new BooleanProperty(WebSocketReplaySampler.PRESERVE_START, preserveStart.isSelected()));
+        element.setProperty(WebSocketReplaySampler.CONNECT_TIMEOUT, connectTimeout.getText());
+    }
+
+    private void init() {
+        setLayout(new BorderLayout(0, 5));
+        setBorder(makeBorder());
+        add(makeTitlePanel(), BorderLayout.NORTH);
+
+        url = new JTextField(40);
+        logFile = new JTextField(40);
+        speed = new JTextField(6);
+        preserveStart = new JCheckBox(WebSocketSamplerGui.getResString("websocket_replay_preserve_start")); // $NON-NLS-1$
+        connectTimeout = new JTextField(6);
+
+        VerticalPanel mainPanel = new VerticalPanel();
+        mainPanel.add(AbstractConnectionSamplerGui.labeled("websocket_replay_log_file", logFile)); // $NON-NLS-1$
+        mainPanel.add(AbstractConnectionSamplerGui.labeled("websocket_replay_url", url)); // $NON-NLS-1$
+        mainPanel.add(AbstractConnectionSamplerGui.labeled("websocket_replay_speed", speed)); // $NON-NLS-1$
+        mainPanel.add(preserveStart);
+        mainPanel.add(AbstractConnectionSamplerGui.labeled("websocket_connect_timeout", connectTimeout)); // $NON-NLS-1$
+        add(mainPanel, BorderLayout.CENTER);
+    }
+}
@@ -1,5 +1,8 @@
 package net.unit8.jmeter.protocol.websocket.control.gui;
 
+import net.unit8.jmeter.protocol.websocket.codec.MessageCodecs;
+import net.unit8.jmeter.protocol.websocket.sampler.MessageCollector;
+import net.unit8.jmeter.protocol.websocket.sampler.OutboundQueue;
 import net.unit8.jmeter.protocol.websocket.sampler.WebSocketSampler;
 import org.apache.jmeter.config.Arguments;
 import org.apache.jmeter.gui.util.HorizontalPanel;
@@ -8,6 +11,7 @@ import org.apache.jmeter.protocol.http.gui.HTTPArgumentsPanel;
 import org.apache.jmeter.protocol.http.util.HTTPArgument;
 import org.apache.jmeter.samplers.gui.AbstractSamplerGui;
 import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.property.BooleanProperty;
 import org.apache.jmeter.testelement.property.TestElementProperty;
 import org.apache.jmeter.util.JMeterUtils;
 import org.apache.jorphan.logging.LoggingManager;
@@ -34,6 +38,30 @@ public class WebSocketSamplerGui extends AbstractSamplerGui {
     private JTextField path;
     private JTextArea  sendMessage;
     private JTextArea  recvMessage;
+    private JComboBox  codec;
+    private JTextArea  codecOptions;
+    private JCheckBox  codecAcceptMessages;
+    private JComboBox  sendMode;
+    private JTextField outboundQueueSize;
+    private JComboBox  outboundPolicy;
+    private JComboBox  recvMode;
+    private JCheckBox  streaming;
+    private JTextField streamFile;
+    private JTextField streamSize;
+    private JTextField streamFragmentSize;
+    private JTextField streamMatch;
+    private JCheckBox  streamAwaitReply;
+    private JCheckBox  aggregate;
+    private JTextField aggregateInterval;
+    private JTextField aggregateMaxFailures;
+    private JTextField prewarmConnections;
+    private JTextField prewarmRate;
+    private JTextField prewarmMaxFailures;
+    private JTextField prewarmTimeout;
+    private JTextField recordFile;
+    private JTextField recvCount;
+    private JTextField recvTerminator;
+    private JTextField recvTimeout;
     private HTTPArgumentsPanel argsPanel;
 
     private boolean displayName = true;
@@ -78,6 +106,30 @@ public class WebSocketSamplerGui extends AbstractSamplerGui {
 
         sendMessage.setText(element.getPropertyAsString(WebSocketSampler.SEND_MESSAGE));
         recvMessage.setText(element.getPropertyAsString(WebSocketSampler.RECV_MESSAGE));
+        sendMode.setSelectedItem(element.getPropertyAsString(WebSocketSampler.SEND_MODE, WebSocketSampler.SEND_MODE_SYNC));
+        codec.setSelectedItem(element.getPropertyAsString(WebSocketSampler.CODEC));
+        codecOptions.setText(element.getPropertyAsString(WebSocketSampler.CODEC_OPTIONS));
+        codecAcceptMessages.setSelected(element.getPropertyAsBoolean(WebSocketSampler.CODEC_ACCEPT_MESSAGES));
+        outboundQueueSize.setText(element.getPropertyAsString(WebSocketSampler.OUTBOUND_QUEUE_SIZE));
+        outboundPolicy.setSelectedItem(element.getPropertyAsString(WebSocketSampler.OUTBOUND_POLICY, OutboundQueue.POLICY_WAIT));
+        recvMode.setSelectedItem(element.getPropertyAsString(WebSocketSampler.RECV_MODE, MessageCollector.MODE_FIRST));
+        recvCount.setText(element.getPropertyAsString(WebSocketSampler.RECV_COUNT));
+        recvTerminator.setText(element.getPropertyAsString(WebSocketSampler.RECV_TERMINATOR));
+        recvTimeout.setText(element.getPropertyAsString(WebSocketSampler.RECV_TIMEOUT));
+        streaming.setSelected(element.getPropertyAsBoolean(WebSocketSampler.STREAMING));
+        streamFile.setText(element.getPropertyAsString(WebSocketSampler.STREAM_FILE));
+        streamSize.setText(element.getPropertyAsString(WebSocketSampler.STREAM_SIZE));
+        streamFragmentSize.setText(element.getPropertyAsString(WebSocketSampler.STREAM_FRAGMENT_SIZE));
+        streamMatch.setText(element.getPropertyAsString(WebSocketSampler.STREAM_MATCH));
+        streamAwaitReply.setSelected(element.getPropertyAsBoolean(WebSocketSampler.STREAM_AWAIT_REPLY, true));
+        aggregate.setSelected(element.getPropertyAsBoolean(WebSocketSampler.AGGREGATE));
+        aggregateInterval.setText(element.getPropertyAsString(WebSocketSampler.AGGREGATE_INTERVAL));
+        aggregateMaxFailures.setText(element.getPropertyAsString(WebSocketSampler.AGGREGATE_MAX_FAILURES));
+        prewarmConnections.setText(element.getPropertyAsString(WebSocketSampler.PREWARM_CONNECTIONS));
+        prewarmRate.setText(element.getPropertyAsString(WebSocketSampler.PREWARM_RATE));
+        prewarmMaxFailures.setText(element.getPropertyAsString(WebSocketSampler.PREWARM_MAX_FAILURES));
+        prewarmTimeout.setText(element.getPropertyAsString(WebSocketSampler.PREWARM_TIMEOUT));
+        recordFile.setText(element.getPropertyAsString(WebSocketSampler.RECORD_FILE));
     }
 
     @Override
@@ -107,6 +159,30 @@ public class WebSocketSamplerGui extends AbstractSamplerGui {
 
         element.setProperty(WebSocketSampler.SEND_MESSAGE, sendMessage.getText());
         element.setProperty(WebSocketSampler.RECV_MESSAGE, recvMessage.getText());
+        element.setProperty(WebSocketSampler.SEND_MODE, (String) sendMode.getSelectedItem());
+        element.setProperty(WebSocketSampler.CODEC, (String) codec.getSelectedItem());
+        element.setProperty(WebSocketSampler.CODEC_OPTIONS, codecOptions.getText());
+        element.setProperty(new BooleanProperty(WebSocketSampler.CODEC_ACCEPT_MESSAGES, codecAcceptMessages.isSelected()));
+        element.setProperty(WebSocketSampler.OUTBOUND_QUEUE_SIZE, outboundQueueSize.getText());
+        element.setProperty(WebSocketSampler.OUTBOUND_POLICY, (String) outboundPolicy.getSelectedItem());
+        element.setProperty(WebSocketSampler.RECV_MODE, (String) recvMode.getSelectedItem());
+        element.setProperty(WebSocketSampler.RECV_COUNT, recvCount.getText());
+        element.setProperty(WebSocketSampler.RECV_TERMINATOR, recvTerminator.getText());
+        element.setProperty(WebSocketSampler.RECV_TIMEOUT, recvTimeout.getText());
+        element.setProperty(new BooleanProperty(WebSocketSampler.STREAMING, streaming.isSelected()));
+        element.setProperty(WebSocketSampler.STREAM_FILE, streamFile.getText());
+        element.setProperty(WebSocketSampler.STREAM_SIZE, streamSize.getText());
+        element.setProperty(WebSocketSampler.STREAM_FRAGMENT_SIZE, streamFragmentSize.getText());
+        element.setProperty(WebSocketSampler.STREAM_MATCH, streamMatch.getText());
+        element.setProperty(new BooleanProperty(WebSocketSampler.STREAM_AWAIT_REPLY, streamAwaitReply.isSelected()));
+        element.setProperty(new BooleanProperty(WebSocketSampler.AGGREGATE, aggregate.isSelected()));
+        element.setProperty(WebSocketSampler.AGGREGATE_INTERVAL, aggregateInterval.getText());
+        element.setProperty(WebSocketSampler.AGGREGATE_MAX_FAILURES, aggregateMaxFailures.getText());
+        element.setProperty(WebSocketSampler.PREWARM_CONNECTIONS, prewarmConnections.getText());
+        element.setProperty(WebSocketSampler.PREWARM_RATE, prewarmRate.getText());
+        element.setProperty(WebSocketSampler.PREWARM_MAX_FAILURES, prewarmMaxFailures.getText());
+        element.setProperty(WebSocketSampler.PREWARM_TIMEOUT, prewarmTimeout.getText());
+        element.setProperty(WebSocketSampler.RECORD_FILE, recordFile.getText());
     }
 
     private JPanel getDomainPanel() {
@@ -190,6 +266,222 @@ public class WebSocketSamplerGui extends AbstractSamplerGui {
         return recvMessagePanel;
     }
 
+    private JPanel getSendOptionsPanel() {
+        sendMode = new JComboBox(WebSocketSampler.SEND_MODES);
+        JLabel sendModeLabel = new JLabel(getResString("websocket_send_mode")); // $NON-NLS-1$
+        sendModeLabel.setLabelFor(sendMode);
+
+        outboundQueueSize = new JTextField(6);
+        JLabel outboundQueueSizeLabel = new JLabel(getResString("websocket_outbound_queue_size")); // $NON-NLS-1$
+        outboundQueueSizeLabel.setLabelFor(outboundQueueSize);
+
+        outboundPolicy = new JComboBox(OutboundQueue.POLICIES);
+        JLabel outboundPolicyLabel = new JLabel(getResString("websocket_outbound_policy")); // $NON-NLS-1$
+        outboundPolicyLabel.setLabelFor(outboundPolicy);
+
+        JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        panel.add(sendModeLabel);
+        panel.add(sendMode);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(outboundQueueSizeLabel);
+        panel.add(outboundQueueSize);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(outboundPolicyLabel);
+        panel.add(outboundPolicy);
+        panel.setMinimumSize(panel.getPreferredSize());
+
+        return panel;
+    }
+
+    private JPanel getCodecPanel() {
+        String[] names = MessageCodecs.getNames();
+        String[] items = new String[names.length + 1];
+        items[0] = ""; // raw frames
+        System.arraycopy(names, 0, items, 1, names.length);
+        codec = new JComboBox(items);
+        JLabel codecLabel = new JLabel(getResString("websocket_codec")); // $NON-NLS-1$
+        codecLabel.setLabelFor(codec);
+
+        codecOptions = new JTextArea(3, 0);
+        codecOptions.setLineWrap(true);
+        JLabel codecOptionsLabel = new JLabel(getResString("websocket_codec_options")); // $NON-NLS-1$
+        codecOptionsLabel.setLabelFor(codecOptions);
+
+        codecAcceptMessages = new JCheckBox(getResString("websocket_codec_accept_messages")); // $NON-NLS-1$
+
+        JPanel codecNamePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        codecNamePanel.add(codecLabel);
+        codecNamePanel.add(codec);
+        codecNamePanel.add(Box.createHorizontalStrut(5));
+        codecNamePanel.add(codecAcceptMessages);
+
+        JPanel panel = new JPanel(new BorderLayout(5, 0));
+        panel.add(codecNamePanel, BorderLayout.NORTH);
+        panel.add(codecOptionsLabel, BorderLayout.WEST);
+        panel.add(codecOptions, BorderLayout.CENTER);
+        return panel;
+    }
+
+    private JPanel getRecvOptionsPanel() {
+        recvMode = new JComboBox(MessageCollector.MODES);
+        JLabel recvModeLabel = new JLabel(getResString("websocket_recv_mode")); // $NON-NLS-1$
+        recvModeLabel.setLabelFor(recvMode);
+
+        recvCount = new JTextField(4);
+        JLabel recvCountLabel = new JLabel(getResString("websocket_recv_count")); // $NON-NLS-1$
+        recvCountLabel.setLabelFor(recvCount);
+
+        recvTerminator = new JTextField(15);
+        JLabel recvTerminatorLabel = new JLabel(getResString("websocket_recv_terminator")); // $NON-NLS-1$
+        recvTerminatorLabel.setLabelFor(recvTerminator);
+
+        recvTimeout = new JTextField(6);
+        JLabel recvTimeoutLabel = new JLabel(getResString("websocket_recv_timeout")); // $NON-NLS-1$
+        recvTimeoutLabel.setLabelFor(recvTimeout);
+
+        JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        panel.add(recvModeLabel);
+        panel.add(recvMode);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(recvCountLabel);
+        panel.add(recvCount);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(recvTerminatorLabel);
+        panel.add(recvTerminator);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(recvTimeoutLabel);
+        panel.add(recvTimeout);
+        panel.setMinimumSize(panel.getPreferredSize());
+
+        return panel;
+    }
+
+    private JPanel getStreamingPanel() {
+        streaming = new JCheckBox(getResString("websocket_streaming")); // $NON-NLS-1$
+
+        streamFile = new JTextField(20);
+        JLabel streamFileLabel = new JLabel(getResString("websocket_stream_file")); // $NON-NLS-1$
+        streamFileLabel.setLabelFor(streamFile);
+
+        streamSize = new JTextField(10);
+        JLabel streamSizeLabel = new JLabel(getResString("websocket_stream_size")); // $NON-NLS-1$
+        streamSizeLabel.setLabelFor(streamSize);
+
+        streamFragmentSize = new JTextField(6);
+        JLabel streamFragmentSizeLabel = new JLabel(getResString("websocket_stream_fragment_size")); // $NON-NLS-1$
+        streamFragmentSizeLabel.setLabelFor(streamFragmentSize);
+
+        streamMatch = new JTextField(10);
+        JLabel streamMatchLabel = new JLabel(getResString("websocket_stream_match")); // $NON-NLS-1$
+        streamMatchLabel.setLabelFor(streamMatch);
+
+        streamAwaitReply = new JCheckBox(getResString("websocket_stream_await_reply"), true); // $NON-NLS-1$
+
+        JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        panel.add(streaming);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(streamFileLabel);
+        panel.add(streamFile);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(streamSizeLabel);
+        panel.add(streamSize);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(streamFragmentSizeLabel);
+        panel.add(streamFragmentSize);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(streamMatchLabel);
+        panel.add(streamMatch);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(streamAwaitReply);
+        panel.setMinimumSize(panel.getPreferredSize());
+
+        return panel;
+    }
+
+    private JPanel getAggregatePanel() {
+        aggregate = new JCheckBox(getResString("websocket_aggregate")); // $NON-NLS-1$
+
+        aggregateInterval = new JTextField(6);
+        JLabel aggregateIntervalLabel = new JLabel(getResString("websocket_aggregate_interval")); // $NON-NLS-1$
+        aggregateIntervalLabel.setLabelFor(aggregateInterval);
+
+        aggregateMaxFailures = new JTextField(4);
+        JLabel aggregateMaxFailuresLabel = new JLabel(getResString("websocket_aggregate_max_failures")); // $NON-NLS-1$
+        aggregateMaxFailuresLabel.setLabelFor(aggregateMaxFailures);
+
+        JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        panel.add(aggregate);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(aggregateIntervalLabel);
+        panel.add(aggregateInterval);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(aggregateMaxFailuresLabel);
+        panel.add(aggregateMaxFailures);
+        panel.setMinimumSize(panel.getPreferredSize());
+
+        return panel;
+    }
+
+    private JPanel getPrewarmPanel() {
+        prewarmConnections = new JTextField(6);
+        JLabel prewarmConnectionsLabel = new JLabel(getResString("websocket_prewarm_connections")); // $NON-NLS-1$
+        prewarmConnectionsLabel.setLabelFor(prewarmConnections);
+
+        prewarmRate = new JTextField(6);
+        JLabel prewarmRateLabel = new JLabel(getResString("websocket_prewarm_rate")); // $NON-NLS-1$
+        prewarmRateLabel.setLabelFor(prewarmRate);
+
+        prewarmMaxFailures = new JTextField(4);
+        JLabel prewarmMaxFailuresLabel = new JLabel(getResString("websocket_prewarm_max_failures")); // $NON-NLS-1$
+        prewarmMaxFailuresLabel.setLabelFor(prewarmMaxFailures);
+
+        prewarmTimeout = new JTextField(6);
+        JLabel prewarmTimeoutLabel = new JLabel(getResString("websocket_prewarm_timeout")); // $NON-NLS-1$
+        prewarmTimeoutLabel.setLabelFor(prewarmTimeout);
+
+        JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        panel.add(prewarmConnectionsLabel);
+        panel.add(prewarmConnections);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(prewarmRateLabel);
+        panel.add(prewarmRate);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(prewarmMaxFailuresLabel);
+        panel.add(prewarmMaxFailures);
+        panel.add(Box.createHorizontalStrut(5));
+
+        panel.add(prewarmTimeoutLabel);
+        panel.add(prewarmTimeout);
+        panel.setMinimumSize(panel.getPreferredSize());
+
+        return panel;
+    }
+
+    private JPanel getRecordPanel() {
+        recordFile = new JTextField(40);
+        JLabel recordFileLabel = new JLabel(getResString("websocket_record_file")); // $NON-NLS-1$
+        recordFileLabel.setLabelFor(recordFile);
+
+        JPanel panel = new JPanel(new BorderLayout(5, 0));
+        panel.add(recordFileLabel, BorderLayout.WEST);
+        panel.add(recordFile, BorderLayout.CENTER);
+        return panel;
+    }
+
     private void init() {
         setLayout(new BorderLayout(0, 5));
 
@@ -217,7 +509,14 @@ public class WebSocketSamplerGui extends AbstractSamplerGui {
 
         mainPanel.add(webRequestPanel);
         mainPanel.add(getSendMessagePanel());
+        mainPanel.add(getSendOptionsPanel());
+        mainPanel.add(getCodecPanel());
         mainPanel.add(getRecvMessagePanel());
+        mainPanel.add(getRecvOptionsPanel());
+        mainPanel.add(getStreamingPanel());
+        mainPanel.add(getAggregatePanel());
+        mainPanel.add(getPrewarmPanel());
+        mainPanel.add(getRecordPanel());
         add(mainPanel, BorderLayout.CENTER);
     }
 
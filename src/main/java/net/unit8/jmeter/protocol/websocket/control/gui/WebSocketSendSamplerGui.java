@@ -0,0 +1,69 @@
+package net.unit8.jmeter.protocol.websocket.control.gui;
+
+import net.unit8.jmeter.protocol.websocket.sampler.OutboundQueue;
+import net.unit8.jmeter.protocol.websocket.sampler.WebSocketSampler;
+import net.unit8.jmeter.protocol.websocket.sampler.WebSocketSendSampler;
+import org.apache.jmeter.gui.util.VerticalPanel;
+import org.apache.jmeter.testelement.TestElement;
+
+import javax.swing.*;
+
+/**
+ * GUI for WebSocketSendSampler
+ *
+ * @author kawasima
+ */
+public class WebSocketSendSamplerGui extends AbstractConnectionSamplerGui {
+    private JTextArea  sendMessage;
+    private JComboBox  sendMode;
+    private JTextField outboundQueueSize;
+    private JComboBox  outboundPolicy;
+
+    public WebSocketSendSamplerGui() {
+        init();
+    }
+
+    @Override
+    public String getStaticLabel() {
+        return WebSocketSamplerGui.getResString("websocket_send_title");  //$NON-NLS-1$
+    }
+
+    @Override
+    public void configure(TestElement element) {
+        super.configure(element);
+        sendMessage.setText(element.getPropertyAsString(WebSocketSendSampler.SEND_MESSAGE));
+        sendMode.setSelectedItem(element.getPropertyAsString(WebSocketSendSampler.SEND_MODE, WebSocketSampler.SEND_MODE_SYNC));
+        outboundQueueSize.setText(element.getPropertyAsString(WebSocketSendSampler.OUTBOUND_QUEUE_SIZE));
+        outboundPolicy.setSelectedItem(element.getPropertyAsString(WebSocketSendSampler.OUTBOUND_POLICY, OutboundQueue.POLICY_WAIT));
+    }
+
+    @Override
+    public TestElement createTestElement() {
+        return initTestElement(new WebSocketSendSampler());
+    }
+
+    @Override
+    public void modifyTestElement(TestElement element) {
+        super.modifyTestElement(element);
+        element.setProperty(WebSocketSendSampler.SEND_MESSAGE, sendMessage.getText());
+        element.setProperty(WebSocketSendSampler.SEND_MODE, (String) sendMode.getSelectedItem());
+        element.setProperty(WebSocketSendSampler.OUTBOUND_QUEUE_SIZE, outboundQueueSize.getText());
+        element.setProperty(WebSocketSendSampler.OUTBOUND_POLICY, (String) outboundPolicy.getSelectedItem());
+    }
+
+    @Override
+    protected JPanel createOptionsPanel() {
+        sendMessage = new JTextArea(3, 0);
+        sendMessage.setLineWrap(true);
+        sendMode = new JComboBox(WebSocketSampler.SEND_MODES);
+        outboundQueueSize = new JTextField(6);
+        outboundPolicy = new JComboBox(OutboundQueue.POLICIES);
+
+        VerticalPanel panel = new VerticalPanel();
+        panel.add(labeled("websocket_send_message", sendMessage)); // $NON-NLS-1$
+        panel.add(labeled("websocket_send_mode", sendMode)); // $NON-NLS-1$
+        panel.add(labeled("websocket_outbound_queue_size", outboundQueueSize)); // $NON-NLS-1$
+        panel.add(labeled("websocket_outbound_policy", outboundPolicy)); // $NON-NLS-1$
+        return panel;
+    }
+}
@@ -0,0 +1,203 @@
+package net.unit8.jmeter.protocol.websocket.replay;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A session log loaded for replay, with the records grouped by connection.
+ *
+ * The logs are loaded once per path and shared by the threads replaying
+ * them, which take the connections in turn.
+ *
+ * @author kawasima
+ */
+public class SessionLog {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final Map<String, SessionLog> logs = new HashMap<String, SessionLog>();
+
+    private final List<RecordedSession> sessions;
+    private final long startOffset;
+    private final long endOffset;
+    private final AtomicLong cursor = new AtomicLong();
+
+    SessionLog(List<RecordedSession> sessions) {
+        this.sessions = sessions;
+        long start = Long.MAX_VALUE;
+        long end = 0L;
+        for (RecordedSession session : sessions) {
+            start = Math.min(start, session.getStartOffset());
+            end = Math.max(end, session.getEndOffset());
+        }
+        this.startOffset = sessions.isEmpty() ? 0L : start;
+        this.endOffset = end;
+    }
+
+    public static SessionLog load(File file) throws IOException {
+        Map<Long, RecordedSession> byId = new LinkedHashMap<Long, RecordedSession>();
+        SessionLogReader reader = new SessionLogReader(file);
+        long records = 0L;
+        try {
+            SessionRecord record;
+            while ((record = reader.next()) != null) {
+                RecordedSession session = byId.get(record.getConnectionId());
+                if (session == null) {
+                    session = new RecordedSession(record.getConnectionId());
+                    byId.put(record.getConnectionId(), session);
+                }
+                session.add(record);
+                records++;
+            }
+        } finally {
+            reader.close();
+        }
+        log.info("Loaded " + byId.size() + " sessions (" + records + " records) from " + file);
+        // Connections are opened in the order of the first record.
+        return new SessionLog(new ArrayList<RecordedSession>(byId.values()));
+    }
+
+    /**
+     * Returns the log of the path, loading it on first use.
+     */
+    public static SessionLog get(String path) throws IOException {
+        synchronized (logs) {
+            SessionLog sessionLog = logs.get(path);
+            if (sessionLog == null) {
+                sessionLog = load(new File(path));
+                logs.put(path, sessionLog);
+            }
+            return sessionLog;
+        }
+    }
+
+    /**
+     * Releases the loaded logs.
+     */
+    public static void clear() {
+        synchronized (logs) {
+            logs.clear();
+        }
+    }
+
+    /**
+     * Takes the index of the next session to replay. The index keeps growing,
+     * so index / size is the number of times the log has been replayed.
+     */
+    public long nextIndex() {
+        return cursor.getAndIncrement();
+    }
+
+    public RecordedSession getSession(long index) {
+        return sessions.get((int) (index % sessions.size()));
+    }
+
+    public List<RecordedSession> getSessions() {
+        return Collections.unmodifiableList(sessions);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * @return the offset of the first record, in microseconds
+     */
+    public long getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * @return the time from the first record to the last one, in microseconds
+     */
+    public long getDuration() {
+        return endOffset - startOffset;
+    }
+
+    /**
+     * The records of a connection.
+     */
+    public static class RecordedSession {
+        private final long connectionId;
+        private final List<SessionRecord> frames = new ArrayList<SessionRecord>();
+        private String uri;
+        private long startOffset = -1L;
+        private long endOffset = 0L;
+        private int sentCount = 0;
+
+        RecordedSession(long connectionId) {
+            this.connectionId = connectionId;
+        }
+
+        void add(SessionRecord record) {
+            if (startOffset < 0) {
+                startOffset = record.getOffset();
+            }
+            endOffset = record.getOffset();
+            switch (record.getType()) {
+                case SessionRecord.OPEN:
+                    uri = record.getPayload();
+                    startOffset = record.getOffset();
+                    break;
+                case SessionRecord.SENT:
+                    sentCount++;
+                    frames.add(record);
+                    break;
+                case SessionRecord.RECEIVED:
+                    frames.add(record);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        public long getConnectionId() {
+            return connectionId;
+        }
+
+        /**
+         * @return the URI the connection was opened to, or null if not recorded
+         */
+        public String getUri() {
+            return uri;
+        }
+
+        /**
+         * @return the sent and received frames, in order
+         */
+        public List<SessionRecord> getFrames() {
+            return frames;
+        }
+
+        public int getSentCount() {
+            return sentCount;
+        }
+
+        public int getReceivedCount() {
+            return frames.size() - sentCount;
+        }
+
+        /**
+         * @return the time the connection was opened, in microseconds
+         */
+        public long getStartOffset() {
+            return startOffset;
+        }
+
+        /**
+         * @return the time of the last record of the connection, in microseconds
+         */
+        public long getEndOffset() {
+            return endOffset;
+        }
+    }
+}
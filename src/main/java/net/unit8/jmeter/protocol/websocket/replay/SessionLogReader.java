@@ -0,0 +1,145 @@
+package net.unit8.jmeter.protocol.websocket.replay;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a session log written by {@link SessionRecorder}.
+ *
+ * A record cut short at the end of the file (e.g. the recording JVM died)
+ * is treated as the end of the log.
+ *
+ * @author kawasima
+ */
+public class SessionLogReader {
+    private final InputStream in;
+    private final long startTime;
+
+    private long position;
+    private long validLength;
+    private long lastOffset = 0L;
+    private long maxConnectionId = -1L;
+
+    public SessionLogReader(File file) throws IOException {
+        this.in = new BufferedInputStream(new FileInputStream(file), 65536);
+        try {
+            byte[] magic = new byte[SessionRecorder.MAGIC.length];
+            readFully(magic);
+            for (int i = 0; i < magic.length; i++) {
+                if (magic[i] != SessionRecorder.MAGIC[i]) {
+                    throw new IOException(file + " is not a session log.");
+                }
+            }
+            int version = readByte();
+            if (version != SessionRecorder.VERSION) {
+                throw new IOException("Unsupported session log version " + version + ": " + file);
+            }
+            long time = 0L;
+            for (int i = 0; i < 8; i++) {
+                time = (time << 8) | readByte();
+            }
+            startTime = time;
+            validLength = position;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the next record, or null at the end of the log
+     */
+    public SessionRecord next() throws IOException {
+        try {
+            int type = in.read();
+            if (type < 0) {
+                return null;
+            }
+            position++;
+            long connectionId = readVarLong();
+            long offset = lastOffset + readVarLong();
+            int length = (int) readVarLong();
+            String payload = null;
+            if (length > 0) {
+                byte[] bytes = new byte[length - 1];
+                readFully(bytes);
+                payload = new String(bytes, "UTF-8");
+            }
+            lastOffset = offset;
+            maxConnectionId = Math.max(maxConnectionId, connectionId);
+            validLength = position;
+            return new SessionRecord(type, connectionId, offset, payload);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * @return the wall clock time the log was started, in milliseconds
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the length of the log up to the end of the last complete record
+     */
+    public long getValidLength() {
+        return validLength;
+    }
+
+    /**
+     * @return the offset of the last record read, in microseconds
+     */
+    public long getLastOffset() {
+        return lastOffset;
+    }
+
+    /**
+     * @return the largest connection id read, or -1
+     */
+    public long getMaxConnectionId() {
+        return maxConnectionId;
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        position++;
+        return b;
+    }
+
+    private void readFully(byte[] bytes) throws IOException {
+        int read = 0;
+        while (read < bytes.length) {
+            int n = in.read(bytes, read, bytes.length - read);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            read += n;
+        }
+        position += bytes.length;
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed session log at " + position);
+    }
+}
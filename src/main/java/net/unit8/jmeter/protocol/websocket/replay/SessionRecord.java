@@ -0,0 +1,51 @@
+package net.unit8.jmeter.protocol.websocket.replay;
+
+/**
+ * A record of the session log.
+ *
+ * @author kawasima
+ */
+public class SessionRecord {
+    /** The connection is open. The payload is the URI. */
+    public static final int OPEN = 0;
+    /** A text frame sent by the client. */
+    public static final int SENT = 1;
+    /** A text frame received by the client. */
+    public static final int RECEIVED = 2;
+    /** The connection is closed. */
+    public static final int CLOSE = 3;
+
+    private final int type;
+    private final long connectionId;
+    private final long offset;
+    private final String payload;
+
+    /**
+     * @param type         the type of the record
+     * @param connectionId the id of the connection in the log
+     * @param offset       the time of the record, in microseconds from the start of the log
+     * @param payload      the frame or the URI, or null
+     */
+    public SessionRecord(int type, long connectionId, long offset, String payload) {
+        this.type = type;
+        this.connectionId = connectionId;
+        this.offset = offset;
+        this.payload = payload;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public long getConnectionId() {
+        return connectionId;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+}
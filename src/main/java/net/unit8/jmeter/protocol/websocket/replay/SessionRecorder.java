@@ -0,0 +1,180 @@
+package net.unit8.jmeter.protocol.websocket.replay;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Appends the frames of the connections to a session log.
+ *
+ * The log is a header (magic, version, start time) followed by records of
+ * <pre>
+ *   type (1 byte)
+ *   connection id (varint)
+ *   time since the previous record in microseconds (varint)
+ *   payload length + 1, 0 for no payload (varint)
+ *   payload (UTF-8)
+ * </pre>
+ * so a small frame takes a few bytes more than its payload. Recording to an
+ * existing log appends to it, with the ids following the records already in
+ * it, and the times following them after a gap of one second, however long
+ * ago they were recorded, so that a replay doesn't wait for that time.
+ *
+ * The recorders are shared by path, and closed at the end of the test.
+ *
+ * @author kawasima
+ */
+public class SessionRecorder {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    static final byte[] MAGIC = new byte[]{'W', 'S', 'L', 'G'};
+    static final int VERSION = 1;
+
+    private static final long APPEND_GAP = 1000000L;
+
+    private static final Map<String, SessionRecorder> recorders = new HashMap<String, SessionRecorder>();
+
+    private final File file;
+    private final OutputStream out;
+    private final long baseOffset;
+    private final long baseNanos;
+    private long lastOffset;
+    private long nextConnectionId;
+    private long recordCount = 0L;
+    private final byte[] buffer = new byte[10];
+    private boolean closed = false;
+
+    SessionRecorder(File file) throws IOException {
+        this.file = file;
+        if (file.exists() && file.length() > 0) {
+            SessionLogReader reader = new SessionLogReader(file);
+            try {
+                while (reader.next() != null) {
+                    // Finds the end of the last complete record.
+                }
+            } finally {
+                reader.close();
+            }
+            lastOffset = reader.getLastOffset();
+            baseOffset = lastOffset + APPEND_GAP;
+            nextConnectionId = reader.getMaxConnectionId() + 1;
+            truncate(file, reader.getValidLength());
+            out = new BufferedOutputStream(new FileOutputStream(file, true), 65536);
+        } else {
+            long startTime = System.currentTimeMillis();
+            lastOffset = 0L;
+            baseOffset = 0L;
+            nextConnectionId = 0L;
+            out = new BufferedOutputStream(new FileOutputStream(file), 65536);
+            out.write(MAGIC);
+            out.write(VERSION);
+            for (int i = 7; i >= 0; i--) {
+                out.write((int) (startTime >>> (i * 8)));
+            }
+        }
+        baseNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the recorder of the log, opening it on first use.
+     */
+    public static SessionRecorder open(String path) throws IOException {
+        synchronized (recorders) {
+            SessionRecorder recorder = recorders.get(path);
+            if (recorder == null) {
+                recorder = new SessionRecorder(new File(path));
+                recorders.put(path, recorder);
+                log.info("Recording sessions to " + path);
+            }
+            return recorder;
+        }
+    }
+
+    /**
+     * Flushes and closes all the recorders.
+     */
+    public static void closeAll() {
+        synchronized (recorders) {
+            for (SessionRecorder recorder : recorders.values()) {
+                try {
+                    recorder.close();
+                } catch (IOException e) {
+                    log.error("Can't close the session log " + recorder.file, e);
+                }
+            }
+            recorders.clear();
+        }
+    }
+
+    /**
+     * Allocates the id of a new connection in the log.
+     */
+    public synchronized long nextConnectionId() {
+        return nextConnectionId++;
+    }
+
+    /**
+     * Appends a record stamped with the current time.
+     * Errors are logged, so that recording never fails a sample.
+     */
+    public synchronized void record(int type, long connectionId, String payload) {
+        if (closed) {
+            // A frame arriving after the end of the test
+            return;
+        }
+        long offset = Math.max(lastOffset, baseOffset + (System.nanoTime() - baseNanos) / 1000L);
+        try {
+            out.write(type);
+            writeVarLong(connectionId);
+            writeVarLong(offset - lastOffset);
+            if (payload == null) {
+                writeVarLong(0L);
+            } else {
+                byte[] bytes = payload.getBytes("UTF-8");
+                writeVarLong(bytes.length + 1L);
+                out.write(bytes);
+            }
+            lastOffset = offset;
+            recordCount++;
+        } catch (IOException e) {
+            log.error("Can't record to the session log " + file, e);
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        closed = true;
+        out.close();
+        log.info("Recorded " + recordCount + " records to " + file);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        int length = 0;
+        while ((value & ~0x7fL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+        out.write(buffer, 0, length);
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        if (file.length() == length) {
+            return;
+        }
+        log.warn("Discarding an incomplete record at the end of " + file);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+}
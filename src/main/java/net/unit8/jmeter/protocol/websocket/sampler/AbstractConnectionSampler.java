@@ -0,0 +1,92 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.apache.jmeter.config.ConfigTestElement;
+import org.apache.jmeter.samplers.AbstractSampler;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.TestStateListener;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Base of the samplers working on a named connection of the registry.
+ *
+ * @author kawasima
+ */
+public abstract class AbstractConnectionSampler extends AbstractSampler implements TestStateListener {
+    private static final Set<String> APPLIABLE_CONFIG_CLASSES = new HashSet<String>(
+            Arrays.asList(new String[]{
+                    "org.apache.jmeter.config.gui.SimpleConfigGui"}));
+
+    public static final String CONNECTION_NAME = "WebSocketConnection.name";
+    public static final String SCOPE = "WebSocketConnection.scope";
+
+    private static final String DEFAULT_CONNECTION_NAME = "default"; // $NON-NLS-1$
+
+    public void setConnectionName(String value) {
+        setProperty(CONNECTION_NAME, value);
+    }
+
+    public String getConnectionName() {
+        return getPropertyAsString(CONNECTION_NAME, DEFAULT_CONNECTION_NAME);
+    }
+
+    public void setScope(String value) {
+        setProperty(SCOPE, value);
+    }
+
+    public String getScope() {
+        return getPropertyAsString(SCOPE, ConnectionRegistry.SCOPE_THREAD);
+    }
+
+    /**
+     * Looks up the session, and marks the result as failed if it isn't open.
+     *
+     * @return the session, or null if there is no open connection with the name
+     */
+    protected WebSocketSession lookupOpenSession(SampleResult res) {
+        WebSocketSession session = ConnectionRegistry.lookup(getScope(), getConnectionName());
+        if (session == null || !session.isOpen()) {
+            res.setResponseCode("404");
+            res.setResponseMessage("No open connection named " + getConnectionName()
+                    + " in " + getScope() + " scope.");
+            res.setSuccessful(false);
+            return null;
+        }
+        return session;
+    }
+
+    @Override
+    public void testStarted() {
+        testStarted("");
+    }
+
+    @Override
+    public void testStarted(String host) {
+        WebSocketClients.start();
+        GeneratorHealth.start();
+    }
+
+    @Override
+    public void testEnded() {
+        testEnded("");
+    }
+
+    @Override
+    public void testEnded(String host) {
+        GeneratorHealth.stop();
+        ConnectionRegistry.closeAll();
+        WebSocketClients.stop();
+    }
+
+    /**
+     * @see org.apache.jmeter.samplers.AbstractSampler#applies(org.apache.jmeter.config.ConfigTestElement)
+     */
+    @Override
+    public boolean applies(ConfigTestElement configElement) {
+        String guiClass = configElement.getProperty(TestElement.GUI_CLASS).getStringValue();
+        return APPLIABLE_CONFIG_CLASSES.contains(guiClass);
+    }
+}
@@ -0,0 +1,243 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import net.unit8.jmeter.protocol.websocket.codec.CodecFrame;
+import net.unit8.jmeter.protocol.websocket.codec.MessageCodec;
+import net.unit8.jmeter.protocol.websocket.replay.SessionRecord;
+import net.unit8.jmeter.protocol.websocket.replay.SessionRecorder;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+import org.eclipse.jetty.websocket.WebSocket;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a subprotocol codec on a connection.
+ *
+ * Answers the control frames of the protocol (handshake, pings, acks),
+ * sends the client heartbeats, and hands the payloads correlated to the
+ * pending request to the message collector. Messages not correlated to a
+ * request (subscriptions, server pushed events) are only handed to the
+ * collector when they are accepted explicitly.
+ *
+ * @author kawasima
+ */
+public class CodecSession {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "WebSocketHeartbeat");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final MessageCodec codec;
+    private volatile MessageCollector collector;
+    private final AtomicLong lastId = new AtomicLong();
+
+    private volatile WebSocket.Connection connection;
+    private volatile String awaitedId;
+    private volatile String error;
+    private volatile boolean acceptMessages = false;
+    private boolean ready = false;
+    private ScheduledFuture<?> heartbeat;
+    private OutboundQueue heartbeatQueue;
+    private SessionRecorder recorder;
+    private long recordingId;
+
+    public CodecSession(MessageCodec codec, MessageCollector collector) {
+        this.codec = codec;
+        this.collector = collector;
+    }
+
+    /**
+     * @param acceptMessages true if messages not correlated to the request complete it too
+     */
+    public void setAcceptMessages(boolean acceptMessages) {
+        this.acceptMessages = acceptMessages;
+    }
+
+    void setCollector(MessageCollector collector) {
+        this.collector = collector;
+    }
+
+    /**
+     * Records the frames sent by the codec, so that the log can be replayed without it.
+     */
+    void setRecorder(SessionRecorder recorder, long recordingId) {
+        this.recorder = recorder;
+        this.recordingId = recordingId;
+    }
+
+    public void onOpen(WebSocket.Connection connection) {
+        this.connection = connection;
+        for (String frame : codec.open()) {
+            sendQuietly(frame);
+        }
+        if (codec.isReady()) {
+            ready();
+        }
+    }
+
+    public void onFrame(String frame) {
+        CodecFrame decoded = codec.decode(frame);
+        if (decoded == null) {
+            return;
+        }
+        if (decoded.getReply() != null) {
+            sendQuietly(decoded.getReply());
+        }
+        String id = decoded.getId();
+        switch (decoded.getType()) {
+            case CodecFrame.CONNECTED:
+                ready();
+                break;
+            case CodecFrame.MESSAGE:
+                if (acceptMessages && awaitedId != null) {
+                    collector.offer(decoded.getPayload());
+                }
+                break;
+            case CodecFrame.REPLY:
+                if (isAwaited(id)) {
+                    collector.offer(decoded.getPayload());
+                }
+                break;
+            case CodecFrame.ERROR:
+                if (isAwaited(id) || (id == null && awaitedId != null)) {
+                    error = decoded.getPayload();
+                    collector.abort();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    public synchronized void onClose() {
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+            heartbeat = null;
+        }
+        if (heartbeatQueue != null) {
+            heartbeatQueue.clear();
+            heartbeatQueue = null;
+        }
+    }
+
+    private synchronized void ready() {
+        ready = true;
+        notifyAll();
+        long interval = codec.getHeartbeatInterval();
+        if (interval > 0 && heartbeat == null) {
+            // Written by the sender pool, so a back-pressured connection never holds the scheduler.
+            heartbeatQueue = new OutboundQueue(connection, 1);
+            heartbeat = heartbeats.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    sendHeartbeat();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Waits for the protocol handshake to complete.
+     */
+    public synchronized boolean awaitReady(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        long rest = timeout;
+        while (!ready && rest > 0) {
+            wait(rest);
+            rest = deadline - System.currentTimeMillis();
+        }
+        return ready;
+    }
+
+    /**
+     * Frames the payload as a new request, whose reply is awaited from now on.
+     *
+     * @return the frame to send
+     */
+    public String prepare(String payload) {
+        String id = String.valueOf(lastId.incrementAndGet());
+        error = null;
+        awaitedId = id;
+        return codec.encode(payload, id);
+    }
+
+    /**
+     * Stops awaiting the reply of the current request, so that a late reply
+     * isn't taken for the reply of the next one.
+     */
+    public void release() {
+        awaitedId = null;
+    }
+
+    /*
+     * Only a frame with the id of the pending request is correlated to it.
+     * An error without an id is an error of the connection, and fails the
+     * pending request too.
+     */
+    private boolean isAwaited(String id) {
+        return id != null && id.equals(awaitedId);
+    }
+
+    /**
+     * @return the error reported for the pending request, or null
+     */
+    public String getError() {
+        return error;
+    }
+
+    public String getCodecName() {
+        return codec.getName();
+    }
+
+    /*
+     * Enqueues a heartbeat without blocking. If the previous one is still
+     * waiting for the connection, another one is pointless and is dropped.
+     */
+    private void sendHeartbeat() {
+        OutboundQueue queue;
+        synchronized (this) {
+            queue = heartbeatQueue;
+        }
+        WebSocket.Connection c = connection;
+        if (queue == null || c == null || !c.isOpen()) {
+            return;
+        }
+        String frame = codec.heartbeat();
+        try {
+            if (queue.offer(frame, OutboundQueue.POLICY_DROP, 0L) && recorder != null) {
+                recorder.record(SessionRecord.SENT, recordingId, frame);
+            }
+        } catch (IOException e) {
+            log.debug("Can't send a " + codec.getName() + " heartbeat: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sendQuietly(String frame) {
+        WebSocket.Connection c = connection;
+        if (c == null || !c.isOpen()) {
+            return;
+        }
+        try {
+            c.sendMessage(frame);
+            if (recorder != null) {
+                recorder.record(SessionRecord.SENT, recordingId, frame);
+            }
+        } catch (IOException e) {
+            log.debug("Can't send a " + codec.getName() + " frame: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+import org.eclipse.jetty.util.ConcurrentHashSet;
+import org.eclipse.jetty.websocket.WebSocket;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Named connections shared between samplers, and the open connections of the JVM.
+ *
+ * A connection in the thread scope is visible to the samplers of the same
+ * thread only, and is kept in the thread's variables. A connection in the
+ * global scope is visible to all threads. A closed connection is removed
+ * from the global scope by its onClose, and from the thread scope by the
+ * next lookup or registration of its thread, as onClose runs on a callback
+ * thread which can't touch the variables of the owning one.
+ *
+ * Every connection opened by the samplers is tracked until its onClose,
+ * so that the connections still open at the end of the test can be closed.
+ * As Connection.close() calls onClose before the server has answered, the
+ * close handshake of a connection completes when the close frame of the
+ * server arrives, or when the connection is actually shut without one.
+ * The teardown is tuned with JMeter properties:
+ * <ul>
+ *     <li>websocket.close_timeout: max time to wait for all close handshakes in ms (default 10000)</li>
+ *     <li>websocket.close_threads: threads sending the close frames (default 16)</li>
+ * </ul>
+ *
+ * @author kawasima
+ */
+public final class ConnectionRegistry {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    public static final String SCOPE_THREAD = "thread"; // $NON-NLS-1$
+    public static final String SCOPE_GLOBAL = "global"; // $NON-NLS-1$
+
+    public static final String[] SCOPES = new String[]{SCOPE_THREAD, SCOPE_GLOBAL};
+
+    private static final String VARIABLE_PREFIX = "websocket.connection."; // $NON-NLS-1$
+
+    private static final long CLOSE_TIMEOUT = JMeterUtils.getPropDefault("websocket.close_timeout", 10000L); // $NON-NLS-1$
+    private static final int CLOSE_THREADS = JMeterUtils.getPropDefault("websocket.close_threads", 16); // $NON-NLS-1$
+    private static final long CLOSE_POLL_INTERVAL = 50L;
+
+    static final byte OP_CLOSE = 0x08;
+
+    private static final ConcurrentMap<String, WebSocketSession> globalSessions
+            = new ConcurrentHashMap<String, WebSocketSession>();
+    private static final ConcurrentHashSet<WebSocket.Connection> openConnections
+            = new ConcurrentHashSet<WebSocket.Connection>();
+    private static volatile Teardown teardown;
+    private static volatile String closeSummary;
+
+    private ConnectionRegistry() {
+    }
+
+    /**
+     * Registers the session under the name.
+     *
+     * @return the session previously registered under the name, or null
+     */
+    public static WebSocketSession register(String scope, String name, WebSocketSession session) {
+        if (SCOPE_GLOBAL.equals(scope)) {
+            return globalSessions.put(name, session);
+        }
+        JMeterVariables variables = JMeterContextService.getContext().getVariables();
+        WebSocketSession previous = (WebSocketSession) variables.getObject(VARIABLE_PREFIX + name);
+        removeClosed(variables);
+        variables.putObject(VARIABLE_PREFIX + name, session);
+        return previous;
+    }
+
+    /*
+     * Removes the closed sessions of the thread, so that a connection closed
+     * by the server isn't kept until the thread ends.
+     */
+    private static void removeClosed(JMeterVariables variables) {
+        List<String> closedNames = new ArrayList<String>();
+        Iterator<Map.Entry<String, Object>> it = variables.getIterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Object> entry = it.next();
+            if (entry.getKey().startsWith(VARIABLE_PREFIX)
+                    && entry.getValue() instanceof WebSocketSession
+                    && ((WebSocketSession) entry.getValue()).isClosed()) {
+                closedNames.add(entry.getKey());
+            }
+        }
+        for (String closedName : closedNames) {
+            variables.remove(closedName);
+        }
+    }
+
+    public static WebSocketSession lookup(String scope, String name) {
+        if (SCOPE_GLOBAL.equals(scope)) {
+            return globalSessions.get(name);
+        }
+        JMeterVariables variables = JMeterContextService.getContext().getVariables();
+        WebSocketSession session = (WebSocketSession) variables.getObject(VARIABLE_PREFIX + name);
+        if (session != null && session.isClosed()) {
+            variables.remove(VARIABLE_PREFIX + name);
+        }
+        return session;
+    }
+
+    public static WebSocketSession unregister(String scope, String name) {
+        if (SCOPE_GLOBAL.equals(scope)) {
+            return globalSessions.remove(name);
+        }
+        return (WebSocketSession) JMeterContextService.getContext().getVariables()
+                .remove(VARIABLE_PREFIX + name);
+    }
+
+    /**
+     * Called from onOpen. Tracks the connection until its onClose, including
+     * a connection whose opening the sampler stopped waiting for.
+     */
+    public static void track(WebSocket.Connection connection) {
+        if (connection != null) {
+            openConnections.add(connection);
+        }
+    }
+
+    /**
+     * Called from onControl. The close frame of the server completes the
+     * close handshake of the connection, if it is being closed by the teardown.
+     */
+    public static void onControl(WebSocket.Connection connection, byte controlCode) {
+        Teardown current = teardown;
+        if (controlCode == OP_CLOSE && connection != null && current != null) {
+            current.handshake(connection);
+        }
+    }
+
+    /**
+     * Called from onClose. Forgets the connection, so closed connections
+     * aren't kept alive by the registry.
+     */
+    public static void closed(WebSocket.Connection connection) {
+        if (connection != null) {
+            openConnections.remove(connection);
+        }
+    }
+
+    /**
+     * Called from onClose of a session.
+     */
+    public static void closed(WebSocketSession session) {
+        globalSessions.remove(session.getName(), session);
+        closed(session.getConnection());
+    }
+
+    public static int getOpenConnectionCount() {
+        return openConnections.size();
+    }
+
+    /**
+     * @return the summary of the last teardown, or null if there were no connections to close
+     */
+    public static String getCloseSummary() {
+        return closeSummary;
+    }
+
+    /**
+     * Closes all the connections still open, in parallel, and waits for the
+     * close frames of the server up to websocket.close_timeout in total.
+     * The close handshake latencies are logged, as a warning if some
+     * connections couldn't be closed in time.
+     */
+    public static synchronized void closeAll() {
+        List<WebSocket.Connection> connections = new ArrayList<WebSocket.Connection>(openConnections);
+        globalSessions.clear();
+        closeSummary = null;
+        if (connections.isEmpty()) {
+            return;
+        }
+
+        final Teardown current = new Teardown(connections.size());
+        teardown = current;
+        ExecutorService closers = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(CLOSE_THREADS, connections.size())), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "WebSocketCloser-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            for (final WebSocket.Connection connection : connections) {
+                closers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        current.started(connection);
+                        if (!connection.isOpen()) {
+                            current.failed(connection);
+                            return;
+                        }
+                        try {
+                            connection.close();
+                        } catch (Exception e) {
+                            log.debug("Can't close the connection: " + e.getMessage());
+                            current.failed(connection);
+                        }
+                    }
+                });
+            }
+            boolean completed = current.await(CLOSE_TIMEOUT);
+            int stillOpen = 0;
+            for (WebSocket.Connection connection : connections) {
+                if (connection.isOpen()) {
+                    stillOpen++;
+                }
+            }
+            closeSummary = current.summary(completed, stillOpen);
+            if (completed && stillOpen == 0) {
+                log.info(closeSummary);
+            } else {
+                log.warn(closeSummary);
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while closing the connections.");
+            Thread.currentThread().interrupt();
+        } finally {
+            closers.shutdownNow();
+            teardown = null;
+            openConnections.clear();
+        }
+    }
+
+    /**
+     * Close handshakes in progress at the end of a test.
+     */
+    static class Teardown {
+        private final ConcurrentMap<WebSocket.Connection, Long> startTimes
+                = new ConcurrentHashMap<WebSocket.Connection, Long>();
+        private final CountDownLatch remaining;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final AtomicInteger withoutFrame = new AtomicInteger();
+        private final AtomicInteger notClosed = new AtomicInteger();
+        private final int total;
+
+        Teardown(int total) {
+            this.total = total;
+            this.remaining = new CountDownLatch(total);
+        }
+
+        void started(WebSocket.Connection connection) {
+            startTimes.put(connection, System.currentTimeMillis());
+        }
+
+        /**
+         * The close frame of the server has arrived.
+         */
+        void handshake(WebSocket.Connection connection) {
+            complete(connection);
+        }
+
+        /**
+         * The connection has been shut without a close frame from the server.
+         */
+        void shut(WebSocket.Connection connection) {
+            if (complete(connection)) {
+                withoutFrame.incrementAndGet();
+            }
+        }
+
+        /**
+         * The connection was already closed, or the close frame couldn't be sent.
+         */
+        void failed(WebSocket.Connection connection) {
+            if (startTimes.remove(connection) != null) {
+                notClosed.incrementAndGet();
+                remaining.countDown();
+            }
+        }
+
+        private boolean complete(WebSocket.Connection connection) {
+            Long start = startTimes.remove(connection);
+            if (start == null) {
+                return false;
+            }
+            synchronized (latencies) {
+                latencies.record(System.currentTimeMillis() - start);
+            }
+            remaining.countDown();
+            return true;
+        }
+
+        /**
+         * Waits for the close frames, checking the connections shut without one
+         * on the way, as no callback tells when that happens.
+         */
+        boolean await(long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            long rest = timeout;
+            while (rest > 0) {
+                if (remaining.await(Math.min(rest, CLOSE_POLL_INTERVAL), TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+                for (WebSocket.Connection connection : startTimes.keySet()) {
+                    if (!connection.isOpen()) {
+                        shut(connection);
+                    }
+                }
+                rest = deadline - System.currentTimeMillis();
+            }
+            return remaining.getCount() == 0;
+        }
+
+        String summary(boolean completed, int stillOpen) {
+            synchronized (latencies) {
+                return "Closed " + latencies.getCount() + " of " + total + " connections"
+                        + (completed ? "" : " (" + remaining.getCount() + " timed out)")
+                        + ", " + withoutFrame.get() + " without a close frame, " + notClosed.get()
+                        + " already closed, " + stillOpen + " still open."
+                        + " Close handshake ms: min=" + latencies.getMin()
+                        + " mean=" + latencies.getMean()
+                        + " p50=" + latencies.getPercentile(50)
+                        + " p99=" + latencies.getPercentile(99)
+                        + " max=" + latencies.getMax();
+            }
+        }
+    }
+}
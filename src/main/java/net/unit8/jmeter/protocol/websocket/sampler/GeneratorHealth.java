@@ -0,0 +1,301 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches the health of the load generator itself.
+ *
+ * A monitor thread detects the pauses of the JVM (GC, safepoints, CPU
+ * starvation) by how much it oversleeps, and probes the callback thread
+ * pool with a task whose dispatch lag is the time a received frame waits
+ * before its onMessage is called. When the pool is low on threads, the
+ * callbacks are backlogged too.
+ *
+ * Samples overlapping one of these events are flagged with a
+ * Generator-Unhealthy response header, as their times include the
+ * generator's own delay. A summary is logged at the end of the test.
+ *
+ * The monitor is tuned with JMeter properties:
+ * <ul>
+ *     <li>websocket.health.enabled: runs the monitor (default true)</li>
+ *     <li>websocket.health.pause_threshold: min pause flagging the samples, in ms (default 50)</li>
+ *     <li>websocket.health.dispatch_threshold: min dispatch lag flagging the samples, in ms (default 50)</li>
+ *     <li>websocket.health.probe_interval: interval of the dispatch probes, in ms (default 100)</li>
+ * </ul>
+ *
+ * @author kawasima
+ */
+public final class GeneratorHealth {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    public static final String HEADER = "Generator-Unhealthy"; // $NON-NLS-1$
+
+    private static final boolean ENABLED = JMeterUtils.getPropDefault("websocket.health.enabled", true); // $NON-NLS-1$
+    private static final long PAUSE_THRESHOLD = JMeterUtils.getPropDefault("websocket.health.pause_threshold", 50L); // $NON-NLS-1$
+    private static final long DISPATCH_THRESHOLD = JMeterUtils.getPropDefault("websocket.health.dispatch_threshold", 50L); // $NON-NLS-1$
+    private static final long PROBE_INTERVAL = JMeterUtils.getPropDefault("websocket.health.probe_interval", 100L); // $NON-NLS-1$
+    private static final long RESOLUTION = 10L;
+    private static final int MAX_EVENTS = 256;
+
+    private static volatile Monitor monitor;
+
+    private GeneratorHealth() {
+    }
+
+    /**
+     * Starts the monitor if it isn't running.
+     */
+    public static synchronized void start() {
+        if (!ENABLED || monitor != null) {
+            return;
+        }
+        monitor = new Monitor(WebSocketClients.getThreadPool());
+        monitor.start();
+    }
+
+    /**
+     * Stops the monitor and logs the summary.
+     */
+    public static synchronized void stop() {
+        Monitor m = monitor;
+        if (m == null) {
+            return;
+        }
+        monitor = null;
+        m.shutdown();
+        log.info(m.summary());
+    }
+
+    /**
+     * Adds the Generator-Unhealthy header if the generator wasn't healthy
+     * during the sample.
+     */
+    public static void annotate(SampleResult res, StringBuilder headers) {
+        String events = describe(res);
+        if (events != null) {
+            headers.append(HEADER).append(": ").append(events).append("\n");
+        }
+    }
+
+    /**
+     * Sets the Generator-Unhealthy header as the only header of a result, if
+     * the generator wasn't healthy. Nothing is allocated for a healthy sample.
+     */
+    public static void annotate(SampleResult res) {
+        String events = describe(res);
+        if (events != null) {
+            res.setResponseHeaders(HEADER + ": " + events + "\n");
+        }
+    }
+
+    private static String describe(SampleResult res) {
+        Monitor m = monitor;
+        return (m == null) ? null : m.describe(res.getStartTime(), res.getEndTime());
+    }
+
+    /**
+     * @return true if the result was flagged by {@link #annotate}
+     */
+    public static boolean isFlagged(SampleResult res) {
+        String headers = res.getResponseHeaders();
+        return headers != null && headers.indexOf(HEADER + ": ") >= 0;
+    }
+
+    private static class Monitor extends Thread {
+        private static final int PAUSE = 0;
+        private static final int DISPATCH_LAG = 1;
+        private static final int LOW_ON_THREADS = 2;
+
+        private final QueuedThreadPool threadPool;
+        private volatile boolean running = true;
+
+        // The last events, in a ring
+        private final int[] kinds = new int[MAX_EVENTS];
+        private final long[] starts = new long[MAX_EVENTS];
+        private final long[] ends = new long[MAX_EVENTS];
+        private final long[] magnitudes = new long[MAX_EVENTS];
+        private int eventCount = 0;
+        private volatile long lastEventEnd = 0L;
+
+        private final LatencyHistogram pauses = new LatencyHistogram();
+        private final LatencyHistogram dispatchLags = new LatencyHistogram();
+        private final AtomicBoolean probeInFlight = new AtomicBoolean(false);
+        private final AtomicLong flaggedCount = new AtomicLong();
+        private long pauseCount = 0L;
+        private long pauseTotal = 0L;
+        private long lowOnThreadsCount = 0L;
+        private long rejectedProbes = 0L;
+        private int maxBusyThreads = 0;
+        private final long startTime = System.currentTimeMillis();
+
+        Monitor(QueuedThreadPool threadPool) {
+            super("WebSocketHealthMonitor"); // $NON-NLS-1$
+            setDaemon(true);
+            this.threadPool = threadPool;
+        }
+
+        @Override
+        public void run() {
+            long lastProbe = 0L;
+            long lastCheck = System.currentTimeMillis();
+            while (running) {
+                long before = System.nanoTime();
+                try {
+                    Thread.sleep(RESOLUTION);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                long now = System.currentTimeMillis();
+                long pause = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - before) - RESOLUTION;
+                synchronized (this) {
+                    pauses.record(pause);
+                    if (pause >= PAUSE_THRESHOLD) {
+                        pauseCount++;
+                        pauseTotal += pause;
+                        addEvent(PAUSE, now - pause, now, pause);
+                    }
+                }
+                if (now - lastProbe >= PROBE_INTERVAL) {
+                    lastProbe = now;
+                    probe(lastCheck, now);
+                    lastCheck = now;
+                }
+            }
+        }
+
+        /*
+         * Dispatches a task through the callback pool, and checks its threads.
+         */
+        private void probe(long lastCheck, long now) {
+            if (!threadPool.isRunning()) {
+                return;
+            }
+            int busy = threadPool.getThreads() - threadPool.getIdleThreads();
+            boolean low = threadPool.isLowOnThreads();
+            synchronized (this) {
+                maxBusyThreads = Math.max(maxBusyThreads, busy);
+                if (low) {
+                    lowOnThreadsCount++;
+                    addEvent(LOW_ON_THREADS, lastCheck, now, busy);
+                }
+            }
+            // A probe still waiting is already measuring the backlog.
+            if (!probeInFlight.compareAndSet(false, true)) {
+                return;
+            }
+            final long dispatched = System.nanoTime();
+            final long dispatchedAt = now;
+            boolean accepted = threadPool.dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    long lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - dispatched);
+                    synchronized (Monitor.this) {
+                        dispatchLags.record(lag);
+                        if (lag >= DISPATCH_THRESHOLD) {
+                            addEvent(DISPATCH_LAG, dispatchedAt, dispatchedAt + lag, lag);
+                        }
+                    }
+                    probeInFlight.set(false);
+                }
+            });
+            if (!accepted) {
+                probeInFlight.set(false);
+                synchronized (this) {
+                    rejectedProbes++;
+                    addEvent(LOW_ON_THREADS, lastCheck, now, busy);
+                }
+            }
+        }
+
+        /*
+         * Consecutive events of the same kind are merged.
+         */
+        private void addEvent(int kind, long start, long end, long magnitude) {
+            int last = (eventCount - 1) % MAX_EVENTS;
+            if (eventCount > 0 && kinds[last] == kind && start <= ends[last]) {
+                ends[last] = Math.max(ends[last], end);
+                magnitudes[last] = Math.max(magnitudes[last], magnitude);
+            } else {
+                int i = eventCount % MAX_EVENTS;
+                kinds[i] = kind;
+                starts[i] = start;
+                ends[i] = end;
+                magnitudes[i] = magnitude;
+                eventCount++;
+            }
+            lastEventEnd = Math.max(lastEventEnd, end);
+        }
+
+        /**
+         * @return the events overlapping the period, or null if there are none
+         */
+        String describe(long start, long end) {
+            if (lastEventEnd < start) {
+                // The usual case, without taking the lock
+                return null;
+            }
+            long maxPause = 0L;
+            long maxLag = 0L;
+            long maxBusy = -1L;
+            synchronized (this) {
+                int n = Math.min(eventCount, MAX_EVENTS);
+                for (int j = 0; j < n; j++) {
+                    int i = (eventCount - 1 - j) % MAX_EVENTS;
+                    if (ends[i] < start || starts[i] > end) {
+                        continue;
+                    }
+                    switch (kinds[i]) {
+                        case PAUSE: maxPause = Math.max(maxPause, magnitudes[i]); break;
+                        case DISPATCH_LAG: maxLag = Math.max(maxLag, magnitudes[i]); break;
+                        default: maxBusy = Math.max(maxBusy, magnitudes[i]);
+                    }
+                }
+            }
+            if (maxPause == 0 && maxLag == 0 && maxBusy < 0) {
+                return null;
+            }
+            flaggedCount.incrementAndGet();
+            StringBuilder sb = new StringBuilder();
+            if (maxPause > 0) {
+                sb.append("pause=").append(maxPause).append("ms ");
+            }
+            if (maxLag > 0) {
+                sb.append("dispatch-lag=").append(maxLag).append("ms ");
+            }
+            if (maxBusy >= 0) {
+                sb.append("low-on-threads=").append(maxBusy).append('/').append(threadPool.getMaxThreads()).append(' ');
+            }
+            return sb.substring(0, sb.length() - 1);
+        }
+
+        void shutdown() {
+            running = false;
+            interrupt();
+            try {
+                join(1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized String summary() {
+            return "Generator health over " + (System.currentTimeMillis() - startTime) / 1000 + " s:\n"
+                    + "  Pauses: " + pauseCount + " over " + PAUSE_THRESHOLD + " ms, " + pauseTotal + " ms in total, "
+                    + "max " + pauses.getMax() + " ms, p99 " + pauses.getPercentile(99.0) + " ms\n"
+                    + "  Callback dispatch lag: " + dispatchLags.getCount() + " probes, "
+                    + "avg " + dispatchLags.getMean() + " ms, p99 " + dispatchLags.getPercentile(99.0) + " ms, "
+                    + "max " + dispatchLags.getMax() + " ms\n"
+                    + "  Callback threads: max " + maxBusyThreads + " busy of " + threadPool.getMaxThreads() + ", "
+                    + "low on threads " + lowOnThreadsCount + " times, " + rejectedProbes + " probes rejected\n"
+                    + "  Samples flagged: " + flaggedCount.get();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size latency histogram.
+ *
+ * Values below one second are counted with 1 ms resolution, values up to
+ * one minute with 100 ms resolution, and larger values in a single overflow
+ * bucket. Recording a value doesn't allocate.
+ *
+ * @author kawasima
+ */
+public class LatencyHistogram {
+    private static final int FINE_LIMIT = 1000;
+    private static final int COARSE_LIMIT = 60000;
+    private static final int COARSE_STEP = 100;
+    private static final int BUCKETS = FINE_LIMIT + (COARSE_LIMIT - FINE_LIMIT) / COARSE_STEP + 1;
+
+    private final int[] counts = new int[BUCKETS];
+    private long count = 0L;
+    private long min = Long.MAX_VALUE;
+    private long max = 0L;
+    private long sum = 0L;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketOf(value)]++;
+        count++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    private static int bucketOf(long value) {
+        if (value < FINE_LIMIT) {
+            return (int) value;
+        }
+        if (value < COARSE_LIMIT) {
+            return FINE_LIMIT + (int) ((value - FINE_LIMIT) / COARSE_STEP);
+        }
+        return BUCKETS - 1;
+    }
+
+    private long upperBoundOf(int bucket) {
+        if (bucket < FINE_LIMIT) {
+            return bucket;
+        }
+        if (bucket < BUCKETS - 1) {
+            return FINE_LIMIT + (long) (bucket - FINE_LIMIT + 1) * COARSE_STEP - 1;
+        }
+        return max;
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket holding the percentile, or 0 if empty
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * count);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0L;
+        min = Long.MAX_VALUE;
+        max = 0L;
+        sum = 0L;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return count == 0 ? 0L : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getMean() {
+        return count == 0 ? 0L : sum / count;
+    }
+}
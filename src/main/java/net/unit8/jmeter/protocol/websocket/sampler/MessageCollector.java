@@ -0,0 +1,206 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Collects inbound text frames for a single sample.
+ *
+ * The collector is armed right before a message is sent, and completes
+ * according to the receive mode:
+ * <ul>
+ *     <li>first: on the first matching frame</li>
+ *     <li>count: after N matching frames</li>
+ *     <li>terminator: on the first frame matching the terminator pattern</li>
+ *     <li>window: never completes by itself, frames are collected until the window elapses</li>
+ * </ul>
+ *
+ * @author kawasima
+ */
+public class MessageCollector {
+    public static final String MODE_FIRST = "first"; // $NON-NLS-1$
+    public static final String MODE_COUNT = "count"; // $NON-NLS-1$
+    public static final String MODE_TERMINATOR = "terminator"; // $NON-NLS-1$
+    public static final String MODE_WINDOW = "window"; // $NON-NLS-1$
+
+    public static final String[] MODES = new String[]{
+            MODE_FIRST, MODE_COUNT, MODE_TERMINATOR, MODE_WINDOW};
+
+    private final String mode;
+    private final Pattern pattern;
+    private final Pattern terminator;
+    private final int expectedCount;
+
+    // Allocated on the first frame, so an idle connection doesn't carry it.
+    private List<String> messages = null;
+    private boolean armed = false;
+    private boolean complete = false;
+    private long firstTime = 0L;
+    private long lastTime = 0L;
+
+    public MessageCollector(String mode, Pattern pattern, Pattern terminator, int expectedCount) {
+        this.mode = (mode == null || mode.length() == 0) ? MODE_FIRST : mode;
+        this.pattern = pattern;
+        this.terminator = terminator;
+        this.expectedCount = Math.max(1, expectedCount);
+    }
+
+    /**
+     * Discards frames of the previous sample and starts collecting.
+     */
+    public synchronized void arm() {
+        if (messages != null) {
+            messages.clear();
+        }
+        complete = false;
+        firstTime = 0L;
+        lastTime = 0L;
+        armed = true;
+    }
+
+    /**
+     * Stops collecting. Frames arriving between samples are ignored.
+     */
+    public synchronized void disarm() {
+        armed = false;
+    }
+
+    public void offer(String message) {
+        offer(message, System.currentTimeMillis());
+    }
+
+    /**
+     * @param message the frame
+     * @param time    the time the frame arrived
+     */
+    public synchronized void offer(String message, long time) {
+        if (!armed || complete) {
+            return;
+        }
+        boolean terminal = MODE_TERMINATOR.equals(mode)
+                && terminator != null && terminator.matcher(message).find();
+        if (!terminal && pattern != null && !pattern.matcher(message).find()) {
+            return;
+        }
+
+        if (messages == null) {
+            messages = new ArrayList<String>(MODE_FIRST.equals(mode) ? 1 : Math.min(expectedCount, 16));
+        }
+        if (messages.isEmpty()) {
+            firstTime = time;
+        }
+        lastTime = time;
+        messages.add(message);
+
+        if (MODE_FIRST.equals(mode)
+                || (MODE_COUNT.equals(mode) && messages.size() >= expectedCount)
+                || terminal) {
+            complete = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Completes the collection without a matching frame, e.g. on a protocol error.
+     */
+    public synchronized void abort() {
+        if (armed) {
+            complete = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the collection completes or the timeout elapses.
+     * In window mode this always waits for the whole timeout.
+     *
+     * @param timeout the timeout (or the window length) in milliseconds
+     * @return true if the receive condition is satisfied
+     */
+    public synchronized boolean await(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        long rest = timeout;
+        while (!complete && rest > 0) {
+            wait(rest);
+            rest = deadline - System.currentTimeMillis();
+        }
+        armed = false;
+        if (MODE_WINDOW.equals(mode)) {
+            return getCount() > 0;
+        }
+        return complete;
+    }
+
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    public synchronized int getCount() {
+        return messages == null ? 0 : messages.size();
+    }
+
+    public synchronized List<String> getMessages() {
+        if (messages == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<String>(messages);
+    }
+
+    /**
+     * @param encoding the content encoding, or empty for the JMeter default (one byte per char)
+     * @return the size of the frames joined with newlines, without joining them
+     */
+    public synchronized long getEncodedLength(String encoding) throws UnsupportedEncodingException {
+        if (messages == null || messages.isEmpty()) {
+            return 0L;
+        }
+        boolean singleByte = encoding == null || encoding.length() == 0;
+        boolean utf8 = "UTF-8".equalsIgnoreCase(encoding); // $NON-NLS-1$
+        int separator = (singleByte || utf8) ? 1 : "\n".getBytes(encoding).length;
+        long length = (long) separator * (messages.size() - 1);
+        for (String message : messages) {
+            if (singleByte) {
+                length += message.length();
+            } else if (utf8) {
+                length += utf8Length(message);
+            } else {
+                length += message.getBytes(encoding).length;
+            }
+        }
+        return length;
+    }
+
+    private static long utf8Length(String s) {
+        long length = 0L;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    public synchronized long getFirstTime() {
+        return firstTime;
+    }
+
+    public synchronized long getLastTime() {
+        return lastTime;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+}
@@ -0,0 +1,195 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+import org.eclipse.jetty.websocket.WebSocket;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded outbound queue for a connection.
+ *
+ * Messages are written to the connection by a bounded pool of sender threads
+ * shared by all the connections, one drain task per connection at a time, so
+ * that the frames of a connection keep their order and the sampler thread
+ * never blocks on a slow reader. A drain task writes a few messages and then
+ * yields its thread to the other connections, so that slow readers holding
+ * the threads in sendMessage delay the other connections but don't need a
+ * thread each.
+ *
+ * The pool is sized with the JMeter property websocket.send_threads
+ * (default 16).
+ *
+ * @author kawasima
+ */
+public class OutboundQueue {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    public static final String POLICY_WAIT = "wait"; // $NON-NLS-1$
+    public static final String POLICY_DROP = "drop"; // $NON-NLS-1$
+    public static final String POLICY_FAIL = "fail"; // $NON-NLS-1$
+
+    public static final String[] POLICIES = new String[]{
+            POLICY_WAIT, POLICY_DROP, POLICY_FAIL};
+
+    private static final int SEND_THREADS = JMeterUtils.getPropDefault("websocket.send_threads", 16); // $NON-NLS-1$
+    private static final int DRAIN_BATCH = 16;
+
+    private static final ExecutorService senders = Executors.newFixedThreadPool(Math.max(1, SEND_THREADS),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "WebSocketSender-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final WebSocket.Connection connection;
+    private final BlockingQueue<PendingMessage> queue;
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong totalTimeToWire = new AtomicLong();
+    private final AtomicLong maxTimeToWire = new AtomicLong();
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    public OutboundQueue(WebSocket.Connection connection, int capacity) {
+        this.connection = connection;
+        this.queue = new ArrayBlockingQueue<PendingMessage>(Math.max(1, capacity));
+    }
+
+    /**
+     * Enqueues the message according to the policy.
+     *
+     * @param message the message to send
+     * @param policy  what to do when the queue is full
+     * @param timeout how long the wait policy may block, in milliseconds
+     * @return true if the message is enqueued, false if it is dropped
+     * @throws IOException if the queue is full and the message can't be dropped
+     */
+    public boolean offer(String message, String policy, long timeout) throws IOException, InterruptedException {
+        PendingMessage pending = new PendingMessage(message);
+        boolean enqueued;
+        if (POLICY_WAIT.equals(policy)) {
+            enqueued = queue.offer(pending, timeout, TimeUnit.MILLISECONDS);
+        } else {
+            enqueued = queue.offer(pending);
+        }
+
+        if (!enqueued) {
+            if (POLICY_DROP.equals(policy)) {
+                droppedCount.incrementAndGet();
+                return false;
+            }
+            throw new IOException("Outbound queue is full (" + queue.size() + " messages).");
+        }
+        if (draining.compareAndSet(false, true)) {
+            senders.execute(drainTask);
+        }
+        return true;
+    }
+
+    private void drain() {
+        try {
+            PendingMessage pending;
+            int sent = 0;
+            while (sent++ < DRAIN_BATCH && (pending = queue.poll()) != null) {
+                try {
+                    connection.sendMessage(pending.message);
+                    long timeToWire = System.currentTimeMillis() - pending.enqueuedAt;
+                    sentCount.incrementAndGet();
+                    totalTimeToWire.addAndGet(timeToWire);
+                    long max;
+                    while (timeToWire > (max = maxTimeToWire.get())) {
+                        if (maxTimeToWire.compareAndSet(max, timeToWire)) {
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    errorCount.incrementAndGet();
+                    log.debug("Can't send a message: " + e.getMessage());
+                }
+            }
+        } finally {
+            draining.set(false);
+            // Requeues the rest of the batch, or a message enqueued after the last poll.
+            if (!queue.isEmpty() && draining.compareAndSet(false, true)) {
+                senders.execute(drainTask);
+            }
+        }
+    }
+
+    /**
+     * Marks the result of a message dropped because the queue is full.
+     * It wasn't sent, so the sample fails, with a code of its own.
+     */
+    public static void setDroppedResult(SampleResult res) {
+        res.setResponseCode("503");
+        res.setResponseMessage("Dropped (outbound queue is full).");
+        res.setSuccessful(false);
+    }
+
+    /**
+     * Discards the messages not yet written.
+     */
+    public void clear() {
+        queue.clear();
+    }
+
+    public int getDepth() {
+        return queue.size();
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    public long getAverageTimeToWire() {
+        long sent = sentCount.get();
+        return sent == 0 ? 0 : totalTimeToWire.get() / sent;
+    }
+
+    public long getMaxTimeToWire() {
+        return maxTimeToWire.get();
+    }
+
+    private static class PendingMessage {
+        private final String message;
+        private final long enqueuedAt;
+
+        PendingMessage(String message) {
+            this.message = message;
+            this.enqueuedAt = System.currentTimeMillis();
+        }
+    }
+}
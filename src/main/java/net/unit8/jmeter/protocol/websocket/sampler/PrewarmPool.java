@@ -0,0 +1,84 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.eclipse.jetty.websocket.WebSocket;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Connections opened before the test threads start, waiting to be adopted
+ * by the threads. Connections are pooled by a key holding the URI and the
+ * settings fixed when the connection opens (codec, streaming, recording), so
+ * a thread only adopts a connection opened the way it would open it.
+ *
+ * @author kawasima
+ */
+public final class PrewarmPool {
+    private static final ConcurrentMap<String, Queue<WarmConnection>> pool
+            = new ConcurrentHashMap<String, Queue<WarmConnection>>();
+
+    private PrewarmPool() {
+    }
+
+    public static void offer(String key, WarmConnection warmConnection) {
+        Queue<WarmConnection> queue = pool.get(key);
+        if (queue == null) {
+            Queue<WarmConnection> created = new ConcurrentLinkedQueue<WarmConnection>();
+            queue = pool.putIfAbsent(key, created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+        queue.offer(warmConnection);
+    }
+
+    /**
+     * Takes an open connection opened with the key.
+     *
+     * @return the connection, or null if none is left
+     */
+    public static WarmConnection take(String key) {
+        Queue<WarmConnection> queue = pool.get(key);
+        if (queue == null) {
+            return null;
+        }
+        WarmConnection warmConnection;
+        while ((warmConnection = queue.poll()) != null) {
+            if (warmConnection.getConnection().isOpen()) {
+                return warmConnection;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forgets the connections not adopted. They are closed with the other
+     * connections at the end of the test.
+     */
+    public static void clear() {
+        pool.clear();
+    }
+
+    /**
+     * An open connection and its handler.
+     */
+    public static class WarmConnection {
+        private final WebSocket.Connection connection;
+        private final WebSocketHandler handler;
+
+        public WarmConnection(WebSocket.Connection connection, WebSocketHandler handler) {
+            this.connection = connection;
+            this.handler = handler;
+        }
+
+        public WebSocket.Connection getConnection() {
+            return connection;
+        }
+
+        public WebSocketHandler getHandler() {
+            return handler;
+        }
+    }
+}
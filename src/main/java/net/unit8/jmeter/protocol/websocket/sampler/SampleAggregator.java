@@ -0,0 +1,137 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.apache.jmeter.samplers.SampleResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rolls the message exchanges of a thread into one summary result per interval.
+ *
+ * Only counts and the latency distribution are kept for successful
+ * exchanges. Failed exchanges are kept as sub results, up to a limit.
+ * The exchanges flagged by {@link GeneratorHealth} are counted, as the
+ * flag of each one is lost in the summary.
+ *
+ * @author kawasima
+ */
+public class SampleAggregator {
+    private final long interval;
+    private final int maxFailures;
+
+    private final LatencyHistogram elapsed = new LatencyHistogram();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final List<SampleResult> failures = new ArrayList<SampleResult>();
+    private long intervalStart = 0L;
+    private int count = 0;
+    private int errors = 0;
+    private int unhealthy = 0;
+    private long bytes = 0L;
+    private long totalElapsed = 0L;
+    private long totalLatency = 0L;
+
+    public SampleAggregator(long interval, int maxFailures) {
+        this.interval = interval;
+        this.maxFailures = maxFailures;
+    }
+
+    public void add(SampleResult res) {
+        if (count == 0) {
+            // A result failed before it started has no start time.
+            intervalStart = res.getStartTime() > 0 ? res.getStartTime() : System.currentTimeMillis();
+        }
+        count++;
+        bytes += res.getBytes();
+        totalElapsed += res.getTime();
+        totalLatency += res.getLatency();
+        elapsed.record(res.getTime());
+        latency.record(res.getLatency());
+        if (GeneratorHealth.isFlagged(res)) {
+            unhealthy++;
+        }
+        if (!res.isSuccessful()) {
+            errors++;
+            if (failures.size() < maxFailures) {
+                failures.add(res);
+            }
+        }
+    }
+
+    /**
+     * @return true if the interval has elapsed since the first exchange
+     */
+    public boolean isDue(long now) {
+        return count > 0 && now - intervalStart >= interval;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Creates the summary result of the interval and starts a new one.
+     *
+     * The elapsed time and the latency of the summary are the sums over the
+     * exchanges, so that listeners dividing by the sample count get the means.
+     */
+    public SampleResult flush(String label) {
+        SampleResult res = new SampleResult();
+        res.setSampleLabel(label);
+        // Sub results update the parent's time and bytes, so add them first.
+        for (SampleResult failure : failures) {
+            res.addSubResult(failure);
+        }
+        res.setStampAndTime(intervalStart, totalElapsed);
+        res.setLatency(totalLatency);
+        res.setSampleCount(count);
+        res.setErrorCount(errors);
+        res.setBytes((int) Math.min(Integer.MAX_VALUE, bytes));
+        res.setSuccessful(errors == 0);
+        if (errors == 0) {
+            res.setResponseCodeOK();
+            res.setResponseMessageOK();
+        } else {
+            res.setResponseMessage(errors + " of " + count + " exchanges failed.");
+        }
+        if (unhealthy > 0) {
+            res.setResponseHeaders(GeneratorHealth.HEADER + ": " + unhealthy + " of " + count + " exchanges\n");
+        }
+        res.setResponseData(summary(), "UTF-8"); // $NON-NLS-1$
+
+        reset();
+        return res;
+    }
+
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Count: ").append(count).append("\n")
+                .append("Errors: ").append(errors).append("\n")
+                .append("Bytes: ").append(bytes).append("\n")
+                .append("Unhealthy: ").append(unhealthy).append("\n");
+        appendDistribution(sb, "Elapsed", elapsed);
+        appendDistribution(sb, "Latency", latency);
+        return sb.toString();
+    }
+
+    private static void appendDistribution(StringBuilder sb, String name, LatencyHistogram histogram) {
+        sb.append(name).append("-Min: ").append(histogram.getMin()).append("\n")
+                .append(name).append("-Mean: ").append(histogram.getMean()).append("\n")
+                .append(name).append("-P50: ").append(histogram.getPercentile(50)).append("\n")
+                .append(name).append("-P90: ").append(histogram.getPercentile(90)).append("\n")
+                .append(name).append("-P95: ").append(histogram.getPercentile(95)).append("\n")
+                .append(name).append("-P99: ").append(histogram.getPercentile(99)).append("\n")
+                .append(name).append("-Max: ").append(histogram.getMax()).append("\n");
+    }
+
+    private void reset() {
+        elapsed.reset();
+        latency.reset();
+        failures.clear();
+        count = 0;
+        errors = 0;
+        unhealthy = 0;
+        bytes = 0L;
+        totalElapsed = 0L;
+        totalLatency = 0L;
+    }
+}
@@ -0,0 +1,166 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.apache.jorphan.util.JOrphanUtils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Consumes the fragments of an inbound message without aggregating it.
+ *
+ * Each fragment updates a digest, the byte and frame counts, and an optional
+ * search for a byte sequence that may span fragment boundaries,
+ * so the memory used doesn't depend on the message size.
+ *
+ * @author kawasima
+ */
+public class StreamReceiver {
+    private static final String DIGEST_ALGORITHM = "SHA-1"; // $NON-NLS-1$
+
+    private final byte[] match;
+    private final int[] failure;
+    private final MessageDigest digest;
+
+    private boolean armed = false;
+    private boolean complete = false;
+    private int matchIndex = 0;
+    private boolean matched = false;
+    private long bytes = 0L;
+    private int frames = 0;
+    private long firstTime = 0L;
+    private long lastTime = 0L;
+    private String hash;
+
+    public StreamReceiver(byte[] match) {
+        this.match = (match != null && match.length > 0) ? match : null;
+        this.failure = (this.match != null) ? failureTable(this.match) : null;
+        try {
+            this.digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized void arm() {
+        digest.reset();
+        complete = false;
+        matchIndex = 0;
+        matched = false;
+        bytes = 0L;
+        frames = 0;
+        firstTime = 0L;
+        lastTime = 0L;
+        hash = null;
+        armed = true;
+    }
+
+    public synchronized void disarm() {
+        armed = false;
+    }
+
+    /**
+     * Consumes a fragment of a data message.
+     *
+     * @param last true if this is the final fragment of the message
+     */
+    public synchronized void onFragment(byte[] data, int offset, int length, boolean last) {
+        if (!armed || complete) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (frames == 0) {
+            firstTime = now;
+        }
+        lastTime = now;
+        frames++;
+        bytes += length;
+        digest.update(data, offset, length);
+        if (match != null && !matched) {
+            search(data, offset, length);
+        }
+        if (last) {
+            hash = JOrphanUtils.baToHexString(digest.digest());
+            complete = true;
+            notifyAll();
+        }
+    }
+
+    /*
+     * Knuth-Morris-Pratt search, which keeps its state between fragments.
+     */
+    private void search(byte[] data, int offset, int length) {
+        int j = matchIndex;
+        for (int i = offset; i < offset + length; i++) {
+            while (j > 0 && data[i] != match[j]) {
+                j = failure[j - 1];
+            }
+            if (data[i] == match[j]) {
+                j++;
+            }
+            if (j == match.length) {
+                matched = true;
+                break;
+            }
+        }
+        matchIndex = j;
+    }
+
+    private static int[] failureTable(byte[] pattern) {
+        int[] table = new int[pattern.length];
+        int j = 0;
+        for (int i = 1; i < pattern.length; i++) {
+            while (j > 0 && pattern[i] != pattern[j]) {
+                j = table[j - 1];
+            }
+            if (pattern[i] == pattern[j]) {
+                j++;
+            }
+            table[i] = j;
+        }
+        return table;
+    }
+
+    /**
+     * Waits until the whole message is consumed or the timeout elapses.
+     *
+     * @return true if the message is complete (and matches, if a match is required)
+     */
+    public synchronized boolean await(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        long rest = timeout;
+        while (!complete && rest > 0) {
+            wait(rest);
+            rest = deadline - System.currentTimeMillis();
+        }
+        armed = false;
+        return complete && (match == null || matched);
+    }
+
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    public synchronized boolean isMatched() {
+        return matched;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getFrames() {
+        return frames;
+    }
+
+    public synchronized long getFirstTime() {
+        return firstTime;
+    }
+
+    public synchronized long getLastTime() {
+        return lastTime;
+    }
+
+    public synchronized String getHash() {
+        return hash;
+    }
+}
@@ -0,0 +1,80 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.eclipse.jetty.websocket.WebSocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Sends a payload as a fragmented binary message.
+ *
+ * The payload is read fragment by fragment into a single buffer,
+ * so a large file is never held in memory as a whole.
+ *
+ * @author kawasima
+ */
+public class StreamSender {
+    private static final byte[] GENERATED_PATTERN =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".getBytes();
+
+    private final WebSocket.FrameConnection connection;
+    private final byte[] buffer;
+
+    public StreamSender(WebSocket.FrameConnection connection, int fragmentSize) {
+        this.connection = connection;
+        this.buffer = new byte[Math.max(1, fragmentSize)];
+    }
+
+    /**
+     * Sends the content of the stream as one message.
+     *
+     * @param in     the payload
+     * @param length the payload length in bytes
+     * @return the number of bytes sent
+     */
+    public long send(InputStream in, long length) throws IOException {
+        long remaining = length;
+        boolean first = true;
+        do {
+            int size = (int) Math.min(buffer.length, remaining);
+            int read = 0;
+            while (read < size) {
+                int n = in.read(buffer, read, size - read);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of payload, " + (remaining - read) + " bytes remain.");
+                }
+                read += n;
+            }
+            remaining -= read;
+            sendFragment(first, remaining == 0, read);
+            first = false;
+        } while (remaining > 0);
+        return length;
+    }
+
+    /**
+     * Sends a generated payload of the given size as one message.
+     *
+     * @return the number of bytes sent
+     */
+    public long sendGenerated(long length) throws IOException {
+        for (int i = 0; i < buffer.length; i++) {
+            buffer[i] = GENERATED_PATTERN[i % GENERATED_PATTERN.length];
+        }
+        long remaining = length;
+        boolean first = true;
+        do {
+            int size = (int) Math.min(buffer.length, remaining);
+            remaining -= size;
+            sendFragment(first, remaining == 0, size);
+            first = false;
+        } while (remaining > 0);
+        return length;
+    }
+
+    private void sendFragment(boolean first, boolean last, int length) throws IOException {
+        byte opcode = first ? connection.getBinaryOpCode() : connection.getContinuationOpCode();
+        byte flags = last ? connection.getFinMask() : 0;
+        connection.sendFrame(flags, opcode, buffer, 0, length);
+    }
+}
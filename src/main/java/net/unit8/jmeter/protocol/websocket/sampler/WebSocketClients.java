@@ -0,0 +1,113 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.websocket.RandomMaskGen;
+import org.eclipse.jetty.websocket.WebSocketClient;
+import org.eclipse.jetty.websocket.WebSocketClientFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Holds the client side objects shared by all connections of the JVM.
+ *
+ * All connections share one factory (selector, thread pool and the pooled
+ * read/write buffers) and one client, and compiled patterns are shared
+ * between connections, so a connection only carries its own state.
+ *
+ * The factory is tuned with JMeter properties:
+ * <ul>
+ *     <li>websocket.buffer_size: size of the pooled buffers (default 8192)</li>
+ *     <li>websocket.max_threads: max threads dispatching the callbacks (default 254)</li>
+ * </ul>
+ *
+ * @author kawasima
+ */
+public final class WebSocketClients {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final int BUFFER_SIZE = JMeterUtils.getPropDefault("websocket.buffer_size", 8192); // $NON-NLS-1$
+    private static final int MAX_THREADS = JMeterUtils.getPropDefault("websocket.max_threads", 254); // $NON-NLS-1$
+    private static final int MAX_CACHED_PATTERNS = 1024;
+
+    private static final QueuedThreadPool threadPool;
+    private static final WebSocketClientFactory factory;
+    private static final ConcurrentMap<String, Pattern> patterns = new ConcurrentHashMap<String, Pattern>();
+    private static WebSocketClient client;
+
+    static {
+        threadPool = new QueuedThreadPool();
+        threadPool.setName("WebSocketClient"); // $NON-NLS-1$
+        threadPool.setMaxThreads(MAX_THREADS);
+        threadPool.setDaemon(true);
+        factory = new WebSocketClientFactory(threadPool, new RandomMaskGen(), BUFFER_SIZE);
+    }
+
+    private WebSocketClients() {
+    }
+
+    /**
+     * @return the pool dispatching the callbacks of all connections
+     */
+    public static QueuedThreadPool getThreadPool() {
+        return threadPool;
+    }
+
+    public static WebSocketClientFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Starts the factory if it isn't running.
+     */
+    public static void start() {
+        try {
+            factory.start();
+        } catch (Exception e) {
+            log.error("Can't start WebSocketClientFactory", e);
+        }
+    }
+
+    public static void stop() {
+        try {
+            factory.stop();
+        } catch (Exception e) {
+            log.error("Can't stop WebSocketClientFactory", e);
+        }
+    }
+
+    /**
+     * Returns the client shared by all connections.
+     * The client holds only the handshake settings, so it is safe to share.
+     */
+    public static synchronized WebSocketClient getClient() {
+        if (client == null) {
+            client = factory.newWebSocketClient();
+        }
+        return client;
+    }
+
+    /**
+     * Compiles the regex, or returns the pattern already compiled for it.
+     *
+     * @return the pattern, or null if the regex is empty
+     */
+    public static Pattern compile(String regex) {
+        if (regex == null || regex.length() == 0) {
+            return null;
+        }
+        Pattern pattern = patterns.get(regex);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);
+            // Don't let patterns including per-thread variables grow the cache without limit.
+            if (patterns.size() < MAX_CACHED_PATTERNS) {
+                patterns.putIfAbsent(regex, pattern);
+            }
+        }
+        return pattern;
+    }
+}
@@ -0,0 +1,90 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.property.IntegerProperty;
+import org.apache.jmeter.testelement.property.LongProperty;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Closes a named connection and removes it from the registry.
+ * The elapsed time is the time of the closing handshake, until the close
+ * frame of the server, whose status code and reason are the response code
+ * and message.
+ *
+ * @author kawasima
+ */
+public class WebSocketCloseSampler extends AbstractConnectionSampler {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    public static final String CLOSE_CODE = "WebSocketCloseSampler.closeCode";
+    public static final String CLOSE_REASON = "WebSocketCloseSampler.closeReason";
+    public static final String CLOSE_TIMEOUT = "WebSocketCloseSampler.closeTimeout";
+
+    private static final int NORMAL_CLOSURE = 1000;
+    private static final long DEFAULT_CLOSE_TIMEOUT = 5000L;
+
+    @Override
+    public SampleResult sample(Entry entry) {
+        SampleResult res = new SampleResult();
+        res.setSampleLabel(getName());
+        res.setSamplerData(getCloseCode() + " " + getCloseReason());
+
+        WebSocketSession session = lookupOpenSession(res);
+        ConnectionRegistry.unregister(getScope(), getConnectionName());
+        if (session == null) {
+            return res;
+        }
+
+        boolean isOK = false;
+        res.sampleStart();
+        try {
+            session.getConnection().close(getCloseCode(), getCloseReason());
+            if (!session.awaitClose(getCloseTimeout())) {
+                throw new TimeoutException("No close frame from the server (probably timeout).");
+            }
+            res.setResponseCode(String.valueOf(session.getCloseCode()));
+            res.setResponseMessage(session.getCloseReason());
+            isOK = true;
+        } catch (Exception e) {
+            log.debug(e.getMessage());
+            res.setResponseMessage(e.getMessage());
+        } finally {
+            res.sampleEnd();
+            res.setSuccessful(isOK);
+        }
+        StringBuilder headers = new StringBuilder();
+        GeneratorHealth.annotate(res, headers);
+        res.setResponseHeaders(headers.toString());
+        return res;
+    }
+
+    public void setCloseCode(int value) {
+        setProperty(new IntegerProperty(CLOSE_CODE, value));
+    }
+
+    public int getCloseCode() {
+        int code = getPropertyAsInt(CLOSE_CODE, NORMAL_CLOSURE);
+        return code > 0 ? code : NORMAL_CLOSURE;
+    }
+
+    public void setCloseReason(String value) {
+        setProperty(CLOSE_REASON, value);
+    }
+
+    public String getCloseReason() {
+        return getPropertyAsString(CLOSE_REASON);
+    }
+
+    public void setCloseTimeout(long value) {
+        setProperty(new LongProperty(CLOSE_TIMEOUT, value));
+    }
+
+    public long getCloseTimeout() {
+        long timeout = getPropertyAsLong(CLOSE_TIMEOUT, DEFAULT_CLOSE_TIMEOUT);
+        return timeout > 0 ? timeout : DEFAULT_CLOSE_TIMEOUT;
+    }
+}
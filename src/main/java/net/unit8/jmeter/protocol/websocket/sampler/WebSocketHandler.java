@@ -0,0 +1,154 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import net.unit8.jmeter.protocol.websocket.replay.SessionRecord;
+import net.unit8.jmeter.protocol.websocket.replay.SessionRecorder;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+import org.eclipse.jetty.websocket.WebSocket;
+
+/**
+ * Receives the events of a sampler connection.
+ *
+ * Text messages are handed to the message collector, through the codec
+ * session when a subprotocol codec is used. In streaming mode,
+ * data frames are consumed by the stream receiver as they arrive and
+ * are not aggregated into a message.
+ *
+ * @author kawasima
+ */
+public class WebSocketHandler implements WebSocket.OnTextMessage, WebSocket.OnFrame, WebSocket.OnControl {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private final String threadName;
+    private volatile MessageCollector collector;
+    private volatile StreamReceiver streamReceiver;
+    private final CodecSession codecSession;
+    private volatile FrameConnection frameConnection;
+    private volatile Connection connection;
+    private SessionRecorder recorder;
+    private long recordingId;
+    private String recordingUri;
+
+    public WebSocketHandler(String threadName, MessageCollector collector, StreamReceiver streamReceiver) {
+        this(threadName, collector, streamReceiver, null);
+    }
+
+    public WebSocketHandler(String threadName, MessageCollector collector, StreamReceiver streamReceiver,
+                            CodecSession codecSession) {
+        this.threadName = threadName;
+        this.collector = collector;
+        this.streamReceiver = streamReceiver;
+        this.codecSession = codecSession;
+    }
+
+    @Override
+    public void onHandshake(FrameConnection connection) {
+        frameConnection = connection;
+        if (streamReceiver != null) {
+            // Deliver frames larger than the buffer as fragments instead of failing.
+            connection.setAllowFrameFragmentation(true);
+        }
+    }
+
+    @Override
+    public boolean onFrame(byte flags, byte opcode, byte[] data, int offset, int length) {
+        FrameConnection connection = frameConnection;
+        if (streamReceiver == null || connection == null || connection.isControl(opcode)) {
+            return false;
+        }
+        streamReceiver.onFragment(data, offset, length, connection.isMessageComplete(flags));
+        return true;
+    }
+
+    @Override
+    public boolean onControl(byte controlCode, byte[] data, int offset, int length) {
+        ConnectionRegistry.onControl(connection, controlCode);
+        return false;
+    }
+
+    @Override
+    public void onMessage(String s) {
+        record(SessionRecord.RECEIVED, s);
+        if (codecSession != null) {
+            codecSession.onFrame(s);
+        } else {
+            collector.offer(s);
+        }
+    }
+
+    @Override
+    public void onOpen(Connection connection) {
+        this.connection = connection;
+        ConnectionRegistry.track(connection);
+        record(SessionRecord.OPEN, recordingUri);
+        if (codecSession != null) {
+            codecSession.onOpen(connection);
+        }
+        log.debug("Connect " + threadName);
+    }
+
+    @Override
+    public void onClose(int i, String s) {
+        ConnectionRegistry.closed(connection);
+        record(SessionRecord.CLOSE, null);
+        if (codecSession != null) {
+            codecSession.onClose();
+        }
+        log.debug("Disconnect " + threadName);
+    }
+
+    /**
+     * Hands the frames to the collector and the stream receiver of the thread
+     * adopting a pre-warmed connection, which are built from its own
+     * (thread-evaluated) settings.
+     */
+    public void adopt(MessageCollector collector, StreamReceiver streamReceiver) {
+        this.collector = collector;
+        this.streamReceiver = streamReceiver;
+        if (codecSession != null) {
+            codecSession.setCollector(collector);
+        }
+    }
+
+    /**
+     * Records the frames of the connection to a session log.
+     * Must be called before the connection is opened.
+     */
+    public void setRecorder(SessionRecorder recorder, String uri) {
+        this.recorder = recorder;
+        this.recordingId = recorder.nextConnectionId();
+        this.recordingUri = uri;
+        if (codecSession != null) {
+            codecSession.setRecorder(recorder, recordingId);
+        }
+    }
+
+    /**
+     * Records a frame sent by the sampler, if the connection is recorded.
+     */
+    public void recordSent(String frame) {
+        record(SessionRecord.SENT, frame);
+    }
+
+    private void record(int type, String payload) {
+        if (recorder != null) {
+            recorder.record(type, recordingId, payload);
+        }
+    }
+
+    public FrameConnection getFrameConnection() {
+        return frameConnection;
+    }
+
+    public MessageCollector getCollector() {
+        return collector;
+    }
+
+    public CodecSession getCodecSession() {
+        return codecSession;
+    }
+
+    public StreamReceiver getStreamReceiver() {
+        return streamReceiver;
+    }
+}
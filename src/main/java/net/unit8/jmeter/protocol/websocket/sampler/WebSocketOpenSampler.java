@@ -0,0 +1,96 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.property.IntegerProperty;
+import org.apache.jmeter.testelement.property.LongProperty;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+import org.eclipse.jetty.websocket.WebSocket;
+
+import java.net.URI;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens a connection and registers it under a name.
+ * The elapsed time is the time of the opening handshake.
+ *
+ * @author kawasima
+ */
+public class WebSocketOpenSampler extends AbstractConnectionSampler {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    public static final String URL = "WebSocketOpenSampler.url";
+    public static final String CONNECT_TIMEOUT = "WebSocketOpenSampler.connectTimeout";
+    public static final String INBOUND_CAPACITY = "WebSocketOpenSampler.inboundCapacity";
+
+    private static final long DEFAULT_CONNECT_TIMEOUT = 20000L;
+    private static final int DEFAULT_INBOUND_CAPACITY = 1000;
+
+    @Override
+    public SampleResult sample(Entry entry) {
+        SampleResult res = new SampleResult();
+        res.setSampleLabel(getName());
+        res.setSamplerData(getUrl());
+
+        boolean isOK = false;
+        Future<WebSocket.Connection> futureConnection = null;
+        res.sampleStart();
+        try {
+            WebSocketSession session = new WebSocketSession(getConnectionName(), getInboundCapacity());
+            futureConnection = WebSocketClients.getClient().open(new URI(getUrl()), session);
+            futureConnection.get(getConnectTimeout(), TimeUnit.MILLISECONDS);
+            res.sampleEnd();
+
+            WebSocketSession previous = ConnectionRegistry.register(getScope(), getConnectionName(), session);
+            if (previous != null && previous.isOpen()) {
+                previous.getConnection().close();
+            }
+            res.setResponseCodeOK();
+            res.setResponseMessageOK();
+            isOK = true;
+        } catch (Exception e) {
+            if (futureConnection != null) {
+                futureConnection.cancel(true);
+            }
+            log.debug(e.getMessage());
+            res.setResponseMessage(e.toString());
+        } finally {
+            if (res.getEndTime() == 0) {
+                res.sampleEnd();
+            }
+            res.setSuccessful(isOK);
+        }
+        StringBuilder headers = new StringBuilder();
+        GeneratorHealth.annotate(res, headers);
+        res.setResponseHeaders(headers.toString());
+        return res;
+    }
+
+    public void setUrl(String value) {
+        setProperty(URL, value);
+    }
+
+    public String getUrl() {
+        return getPropertyAsString(URL);
+    }
+
+    public void setConnectTimeout(long value) {
+        setProperty(new LongProperty(CONNECT_TIMEOUT, value));
+    }
+
+    public long getConnectTimeout() {
+        long timeout = getPropertyAsLong(CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT);
+        return timeout > 0 ? timeout : DEFAULT_CONNECT_TIMEOUT;
+    }
+
+    public void setInboundCapacity(int value) {
+        setProperty(new IntegerProperty(INBOUND_CAPACITY, value));
+    }
+
+    public int getInboundCapacity() {
+        int capacity = getPropertyAsInt(INBOUND_CAPACITY, DEFAULT_INBOUND_CAPACITY);
+        return capacity > 0 ? capacity : DEFAULT_INBOUND_CAPACITY;
+    }
+}
@@ -0,0 +1,142 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.property.IntegerProperty;
+import org.apache.jmeter.testelement.property.LongProperty;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Receives messages from a named connection without sending anything.
+ *
+ * Frames that arrived since the previous receive are consumed first,
+ * in arrival order. Frames that don't match are discarded.
+ *
+ * @author kawasima
+ */
+public class WebSocketReceiveSampler extends AbstractConnectionSampler {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    public static final String RECV_MESSAGE = "WebSocketReceiveSampler.recvMessage";
+    public static final String RECV_MODE = "WebSocketReceiveSampler.recvMode";
+    public static final String RECV_COUNT = "WebSocketReceiveSampler.recvCount";
+    public static final String RECV_TERMINATOR = "WebSocketReceiveSampler.recvTerminator";
+    public static final String RECV_TIMEOUT = "WebSocketReceiveSampler.recvTimeout";
+
+    private static final long DEFAULT_RECV_TIMEOUT = 20000L;
+
+    @Override
+    public SampleResult sample(Entry entry) {
+        SampleResult res = new SampleResult();
+        res.setSampleLabel(getName());
+        res.setSamplerData(getRecvMessage());
+
+        WebSocketSession session = lookupOpenSession(res);
+        if (session == null) {
+            return res;
+        }
+
+        MessageCollector collector = new MessageCollector(getRecvMode(),
+                WebSocketClients.compile(getRecvMessage()),
+                WebSocketClients.compile(getRecvTerminator()),
+                getRecvCount());
+        boolean isOK = false;
+        res.sampleStart();
+        try {
+            collector.arm();
+            long deadline = res.getStartTime() + getRecvTimeout();
+            long rest = getRecvTimeout();
+            while (!collector.isComplete() && rest > 0) {
+                WebSocketSession.InboundFrame frame = session.poll(rest);
+                if (frame == null) {
+                    break;
+                }
+                collector.offer(frame.getMessage(), frame.getTime());
+                rest = deadline - System.currentTimeMillis();
+            }
+            boolean received = MessageCollector.MODE_WINDOW.equals(collector.getMode())
+                    ? collector.getCount() > 0 : collector.isComplete();
+            setReceivedResult(res, collector);
+            if (!received) {
+                res.setResponseCode("204");
+                throw new TimeoutException("No content (probably timeout).");
+            }
+            res.setResponseCodeOK();
+            res.setResponseMessageOK();
+            isOK = true;
+        } catch (Exception e) {
+            log.debug(e.getMessage());
+            res.setResponseMessage(e.getMessage());
+        } finally {
+            collector.disarm();
+            res.sampleEnd();
+            res.setSuccessful(isOK);
+        }
+        StringBuilder headers = new StringBuilder(res.getResponseHeaders());
+        GeneratorHealth.annotate(res, headers);
+        res.setResponseHeaders(headers.toString());
+        return res;
+    }
+
+    private void setReceivedResult(SampleResult res, MessageCollector collector) {
+        List<String> messages = collector.getMessages();
+        if (messages.isEmpty()) {
+            return;
+        }
+        long start = res.getStartTime();
+        // Frames buffered before the sample started have no latency.
+        long firstFrame = Math.max(0L, collector.getFirstTime() - start);
+        long lastFrame = Math.max(0L, collector.getLastTime() - start);
+        res.setLatency(firstFrame);
+        res.setResponseData(StringUtils.join(messages, "\n"), "UTF-8"); // $NON-NLS-1$
+        res.setResponseHeaders("Received-Count: " + messages.size() + "\n"
+                + "Time-To-First-Frame: " + firstFrame + "\n"
+                + "Time-To-Last-Frame: " + lastFrame + "\n");
+    }
+
+    public void setRecvMessage(String value) {
+        setProperty(RECV_MESSAGE, value);
+    }
+
+    public String getRecvMessage() {
+        return getPropertyAsString(RECV_MESSAGE);
+    }
+
+    public void setRecvMode(String value) {
+        setProperty(RECV_MODE, value);
+    }
+
+    public String getRecvMode() {
+        return getPropertyAsString(RECV_MODE, MessageCollector.MODE_FIRST);
+    }
+
+    public void setRecvCount(int value) {
+        setProperty(new IntegerProperty(RECV_COUNT, value));
+    }
+
+    public int getRecvCount() {
+        return getPropertyAsInt(RECV_COUNT, 1);
+    }
+
+    public void setRecvTerminator(String value) {
+        setProperty(RECV_TERMINATOR, value);
+    }
+
+    public String getRecvTerminator() {
+        return getPropertyAsString(RECV_TERMINATOR);
+    }
+
+    public void setRecvTimeout(long value) {
+        setProperty(new LongProperty(RECV_TIMEOUT, value));
+    }
+
+    public long getRecvTimeout() {
+        long timeout = getPropertyAsLong(RECV_TIMEOUT, DEFAULT_RECV_TIMEOUT);
+        return timeout > 0 ? timeout : DEFAULT_RECV_TIMEOUT;
+    }
+}
@@ -0,0 +1,293 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import net.unit8.jmeter.protocol.websocket.replay.SessionLog;
+import net.unit8.jmeter.protocol.websocket.replay.SessionRecord;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jmeter.samplers.AbstractSampler;
+import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.TestStateListener;
+import org.apache.jmeter.testelement.property.BooleanProperty;
+import org.apache.jmeter.testelement.property.DoubleProperty;
+import org.apache.jmeter.testelement.property.LongProperty;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+import org.eclipse.jetty.websocket.WebSocket;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a connection recorded in a session log.
+ *
+ * Each sample opens a connection, sends the recorded frames at their
+ * recorded times divided by the speed factor, and closes the connection
+ * at the time of the last recorded frame. The threads take the connections
+ * of the log in turn, starting over at the end of the log.
+ *
+ * The lag between the scheduled and the actual send times is reported in
+ * the response headers, so that a generator unable to keep up with the
+ * speed factor can be told apart from a slow server.
+ *
+ * @author kawasima
+ */
+public class WebSocketReplaySampler extends AbstractSampler implements TestStateListener {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    public static final String URL = "WebSocketReplaySampler.url";
+    public static final String LOG_FILE = "WebSocketReplaySampler.logFile";
+    public static final String SPEED = "WebSocketReplaySampler.speed";
+    public static final String PRESERVE_START = "WebSocketReplaySampler.preserveStart";
+    public static final String CONNECT_TIMEOUT = "WebSocketReplaySampler.connectTimeout";
+
+    private static final double DEFAULT_SPEED = 1.0;
+    private static final long DEFAULT_CONNECT_TIMEOUT = 20000L;
+
+    private static volatile long testStartNanos = System.nanoTime();
+
+    @Override
+    public SampleResult sample(Entry entry) {
+        SampleResult res = new SampleResult();
+        res.setSampleLabel(getName());
+
+        SessionLog sessionLog;
+        try {
+            sessionLog = SessionLog.get(getLogFile());
+        } catch (IOException e) {
+            res.setResponseMessage("Can't load the session log: " + e.getMessage());
+            res.setSuccessful(false);
+            return res;
+        }
+        if (sessionLog.size() == 0) {
+            res.setResponseMessage("The session log is empty.");
+            res.setSuccessful(false);
+            return res;
+        }
+
+        double speed = getSpeed();
+        long index = sessionLog.nextIndex();
+        SessionLog.RecordedSession session = sessionLog.getSession(index);
+        String url = StringUtils.isNotEmpty(getUrl()) ? getUrl() : session.getUri();
+        res.setSamplerData(url + "\n" + getLogFile() + " #" + session.getConnectionId() + " at " + speed + "x");
+
+        StringBuilder headers = new StringBuilder();
+        headers.append("Replay-Connection: ").append(session.getConnectionId()).append("\n")
+                .append("Replay-Speed: ").append(speed).append("\n");
+
+        boolean isOK = false;
+        int sent = 0;
+        LatencyHistogram lags = new LatencyHistogram();
+        ReplayListener listener = new ReplayListener();
+        WebSocket.Connection connection = null;
+        Future<WebSocket.Connection> futureConnection = null;
+        try {
+            if (isPreserveStart()) {
+                // The n-th pass over the log starts n log durations after the test start.
+                long pass = index / sessionLog.size();
+                long offset = pass * sessionLog.getDuration() + session.getStartOffset() - sessionLog.getStartOffset();
+                long scheduled = testStartNanos + scale(offset, speed);
+                sleepUntil(scheduled);
+                headers.append("Replay-Start-Lag: ").append(toMillis(System.nanoTime() - scheduled)).append("\n");
+            }
+            if (StringUtils.isEmpty(url)) {
+                throw new IOException("The URL of the connection isn't recorded.");
+            }
+
+            res.sampleStart();
+            futureConnection = WebSocketClients.getClient().open(new URI(url), listener);
+            connection = futureConnection.get(getConnectTimeout(), TimeUnit.MILLISECONDS);
+            long base = System.nanoTime();
+            res.setLatency(System.currentTimeMillis() - res.getStartTime());
+
+            long last = base;
+            for (SessionRecord frame : session.getFrames()) {
+                long scheduled = base + scale(frame.getOffset() - session.getStartOffset(), speed);
+                last = Math.max(last, scheduled);
+                if (frame.getType() != SessionRecord.SENT) {
+                    continue;
+                }
+                sleepUntil(scheduled);
+                lags.record(toMillis(System.nanoTime() - scheduled));
+                connection.sendMessage(frame.getPayload());
+                sent++;
+            }
+            // Gives the recorded replies the time they took.
+            long closeAt = base + scale(session.getEndOffset() - session.getStartOffset(), speed);
+            sleepUntil(Math.max(last, closeAt));
+            res.setResponseCodeOK();
+            res.setResponseMessageOK();
+            isOK = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            res.setResponseMessage("Interrupted");
+        } catch (Exception e) {
+            if (futureConnection != null && connection == null) {
+                futureConnection.cancel(true);
+            }
+            log.debug(e.getMessage());
+            res.setResponseMessage(e.getMessage());
+        } finally {
+            if (connection != null && connection.isOpen()) {
+                connection.close();
+            }
+            if (res.getStartTime() == 0) {
+                res.sampleStart();
+            }
+            res.sampleEnd();
+            res.setSuccessful(isOK);
+        }
+
+        headers.append("Replay-Frames-Sent: ").append(sent).append(" / ").append(session.getSentCount()).append("\n")
+                .append("Replay-Frames-Received: ").append(listener.getCount())
+                .append(" / ").append(session.getReceivedCount()).append("\n");
+        if (lags.getCount() > 0) {
+            headers.append("Replay-Lag-Avg: ").append(lags.getMean()).append("\n")
+                    .append("Replay-Lag-P99: ").append(lags.getPercentile(99.0)).append("\n")
+                    .append("Replay-Lag-Max: ").append(lags.getMax()).append("\n");
+        }
+        GeneratorHealth.annotate(res, headers);
+        res.setResponseHeaders(headers.toString());
+        res.setBytes((int) Math.min(Integer.MAX_VALUE, listener.getBytes()));
+        return res;
+    }
+
+    /*
+     * Converts a recorded duration in microseconds to a replayed one in nanoseconds.
+     */
+    private static long scale(long micros, double speed) {
+        return (long) (micros * 1000L / speed);
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(0L, nanos));
+    }
+
+    private static void sleepUntil(long nanos) throws InterruptedException {
+        long rest = nanos - System.nanoTime();
+        if (rest > 0) {
+            TimeUnit.NANOSECONDS.sleep(rest);
+        }
+    }
+
+    public void setUrl(String value) {
+        setProperty(URL, value);
+    }
+
+    /**
+     * @return the URL to connect to, or an empty string for the recorded one
+     */
+    public String getUrl() {
+        return getPropertyAsString(URL);
+    }
+
+    public void setLogFile(String value) {
+        setProperty(LOG_FILE, value);
+    }
+
+    public String getLogFile() {
+        return getPropertyAsString(LOG_FILE);
+    }
+
+    public void setSpeed(double value) {
+        setProperty(new DoubleProperty(SPEED, value));
+    }
+
+    public double getSpeed() {
+        if (StringUtils.isBlank(getPropertyAsString(SPEED))) {
+            return DEFAULT_SPEED;
+        }
+        double speed = getPropertyAsDouble(SPEED);
+        return speed > 0 ? speed : DEFAULT_SPEED;
+    }
+
+    public void setPreserveStart(boolean value) {
+        setProperty(new BooleanProperty(PRESERVE_START, value));
+    }
+
+    /**
+     * @return true if the connections are opened at their recorded times from the test start
+     */
+    public boolean isPreserveStart() {
+        return getPropertyAsBoolean(PRESERVE_START, false);
+    }
+
+    public void setConnectTimeout(long value) {
+        setProperty(new LongProperty(CONNECT_TIMEOUT, value));
+    }
+
+    public long getConnectTimeout() {
+        long timeout = getPropertyAsLong(CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT);
+        return timeout > 0 ? timeout : DEFAULT_CONNECT_TIMEOUT;
+    }
+
+    @Override
+    public void testStarted() {
+        testStarted("");
+    }
+
+    @Override
+    public void testStarted(String host) {
+        WebSocketClients.start();
+        GeneratorHealth.start();
+        testStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void testEnded() {
+        testEnded("");
+    }
+
+    @Override
+    public void testEnded(String host) {
+        GeneratorHealth.stop();
+        ConnectionRegistry.closeAll();
+        WebSocketClients.stop();
+        SessionLog.clear();
+    }
+
+    /**
+     * Counts the frames received while replaying, and their size in UTF-8.
+     */
+    private static class ReplayListener implements WebSocket.OnTextMessage, WebSocket.OnControl {
+        private static final Charset UTF8 = Charset.forName("UTF-8"); // $NON-NLS-1$
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private volatile Connection connection;
+
+        @Override
+        public void onOpen(Connection connection) {
+            this.connection = connection;
+            ConnectionRegistry.track(connection);
+        }
+
+        @Override
+        public void onMessage(String data) {
+            count.incrementAndGet();
+            bytes.addAndGet(data.getBytes(UTF8).length);
+        }
+
+        @Override
+        public boolean onControl(byte controlCode, byte[] data, int offset, int length) {
+            ConnectionRegistry.onControl(connection, controlCode);
+            return false;
+        }
+
+        @Override
+        public void onClose(int closeCode, String message) {
+            ConnectionRegistry.closed(connection);
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        long getBytes() {
+            return bytes.get();
+        }
+    }
+}
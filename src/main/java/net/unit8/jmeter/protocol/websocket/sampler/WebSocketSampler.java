@@ -1,9 +1,14 @@
 package net.unit8.jmeter.protocol.websocket.sampler;
 
+import net.unit8.jmeter.protocol.websocket.codec.MessageCodec;
+import net.unit8.jmeter.protocol.websocket.codec.MessageCodecs;
+import net.unit8.jmeter.protocol.websocket.replay.SessionRecorder;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jmeter.config.Argument;
 import org.apache.jmeter.config.Arguments;
 import org.apache.jmeter.config.ConfigTestElement;
+import org.apache.jmeter.control.Controller;
+import org.apache.jmeter.control.LoopController;
 import org.apache.jmeter.protocol.http.util.EncoderCache;
 import org.apache.jmeter.protocol.http.util.HTTPArgument;
 import org.apache.jmeter.protocol.http.util.HTTPConstants;
@@ -12,32 +17,40 @@ import org.apache.jmeter.samplers.Entry;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testelement.TestElement;
 import org.apache.jmeter.testelement.TestStateListener;
+import org.apache.jmeter.testelement.ThreadListener;
 import org.apache.jmeter.testelement.property.*;
+import org.apache.jmeter.threads.AbstractThreadGroup;
+import org.apache.jmeter.threads.JMeterContext;
 import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.ThreadGroup;
 import org.apache.jorphan.logging.LoggingManager;
 import org.apache.jorphan.util.JOrphanUtils;
 import org.apache.log.Logger;
-import org.eclipse.jetty.util.ConcurrentHashSet;
 import org.eclipse.jetty.websocket.WebSocket;
-import org.eclipse.jetty.websocket.WebSocketClient;
-import org.eclipse.jetty.websocket.WebSocketClientFactory;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.regex.Pattern;
 
 /**
  * The sampler for WebSocket.
 
  * @author kawasima
  */
-public class WebSocketSampler extends AbstractSampler implements TestStateListener {
+public class WebSocketSampler extends AbstractSampler implements TestStateListener, ThreadListener {
 
     private static final Logger log = LoggingManager.getLoggerForClass();
 
@@ -56,14 +69,29 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
     private static final int UNSPECIFIED_PORT = 0;
     private static final String UNSPECIFIED_PORT_AS_STRING = "0"; // $NON-NLS-1$
     private static final int URL_UNSPECIFIED_PORT = -1;
+    private static final long DEFAULT_RECV_TIMEOUT = 20000L;
+    private static final int DEFAULT_OUTBOUND_QUEUE_SIZE = 100;
+    private static final int DEFAULT_STREAM_FRAGMENT_SIZE = 65536;
+    private static final long DEFAULT_AGGREGATE_INTERVAL = 10000L;
+    private static final int DEFAULT_AGGREGATE_MAX_FAILURES = 100;
+    private static final long DEFAULT_PREWARM_TIMEOUT = 60000L;
 
 
     private WebSocket.Connection connection = null;
-    private static final ConcurrentHashSet<WebSocket.Connection> samplerConnections
-            = new ConcurrentHashSet<WebSocket.Connection>();
 
     private boolean initialized = false;
-    private String responseMessage;
+    private MessageCollector collector;
+    private OutboundQueue outboundQueue;
+    private WebSocketHandler handler;
+    private long streamBytesTotal = 0L;
+    private long streamTimeTotal = 0L;
+    private SampleAggregator aggregator;
+    private long threadStartTime = 0L;
+    private long maxExchangeTime = 0L;
+    private int currentIteration = 0;
+    private int runsInIteration = 0;
+    private int runsPerIteration = 0;
+    private boolean tailFlushed = false;
 
     public static final String DOMAIN = "WebSocketSampler.domain";
     public static final String PORT = "WebSocketSampler.port";
@@ -74,8 +102,38 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
     public static final String SEND_MESSAGE = "WebSocketSampler.sendMessage";
     public static final String RECV_MESSAGE = "WebSocketSampler.recvMessage";
     public static final String RECV_TIMEOUT = "WebSocketSampler.recvTimeout";
+    public static final String RECV_MODE = "WebSocketSampler.recvMode";
+    public static final String RECV_COUNT = "WebSocketSampler.recvCount";
+    public static final String RECV_TERMINATOR = "WebSocketSampler.recvTerminator";
+    public static final String SEND_MODE = "WebSocketSampler.sendMode";
+    public static final String OUTBOUND_QUEUE_SIZE = "WebSocketSampler.outboundQueueSize";
+    public static final String OUTBOUND_POLICY = "WebSocketSampler.outboundPolicy";
 
-    private static WebSocketClientFactory webSocketClientFactory = new WebSocketClientFactory();
+    public static final String STREAMING = "WebSocketSampler.streaming";
+    public static final String STREAM_FILE = "WebSocketSampler.streamFile";
+    public static final String STREAM_SIZE = "WebSocketSampler.streamSize";
+    public static final String STREAM_FRAGMENT_SIZE = "WebSocketSampler.streamFragmentSize";
+    public static final String STREAM_MATCH = "WebSocketSampler.streamMatch";
+    public static final String STREAM_AWAIT_REPLY = "WebSocketSampler.streamAwaitReply";
+
+    public static final String AGGREGATE = "WebSocketSampler.aggregate";
+    public static final String AGGREGATE_INTERVAL = "WebSocketSampler.aggregateInterval";
+    public static final String AGGREGATE_MAX_FAILURES = "WebSocketSampler.aggregateMaxFailures";
+
+    public static final String PREWARM_CONNECTIONS = "WebSocketSampler.prewarmConnections";
+    public static final String PREWARM_RATE = "WebSocketSampler.prewarmRate";
+    public static final String PREWARM_MAX_FAILURES = "WebSocketSampler.prewarmMaxFailures";
+    public static final String PREWARM_TIMEOUT = "WebSocketSampler.prewarmTimeout";
+
+    public static final String CODEC = "WebSocketSampler.codec";
+    public static final String CODEC_OPTIONS = "WebSocketSampler.codecOptions";
+    public static final String CODEC_ACCEPT_MESSAGES = "WebSocketSampler.codecAcceptMessages";
+
+    public static final String RECORD_FILE = "WebSocketSampler.recordFile";
+
+    public static final String SEND_MODE_SYNC = "sync"; // $NON-NLS-1$
+    public static final String SEND_MODE_ASYNC = "async"; // $NON-NLS-1$
+    public static final String[] SEND_MODES = new String[]{SEND_MODE_SYNC, SEND_MODE_ASYNC};
 
 
     public WebSocketSampler() {
@@ -84,38 +142,248 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
 
     public void initialize() throws Exception {
         URI uri = getUri();
-        WebSocketClient webSocketClient = webSocketClientFactory.newWebSocketClient();
-        final WebSocketSampler parent = this;
-        final String threadName = JMeterContextService.getContext().getThread().getThreadName();
-        final Pattern regex = (getRecvMessage() != null) ? Pattern.compile(getRecvMessage()) : null;
-        Future<WebSocket.Connection> futureConnection = webSocketClient.open(uri, new WebSocket.OnTextMessage() {
-
-            @Override
-            public void onMessage(String s) {
-                synchronized (parent) {
-                    if (regex == null || regex.matcher(s).find()) {
-                        responseMessage = s;
-                        parent.notify();
+        PrewarmPool.WarmConnection warmConnection = PrewarmPool.take(getConnectionKey(uri));
+        if (warmConnection != null) {
+            handler = warmConnection.getHandler();
+            // The warm handler was built outside of any thread, so the receive settings are rebuilt here.
+            handler.adopt(createCollector(), createStreamReceiver());
+            if (handler.getCodecSession() != null) {
+                handler.getCodecSession().setAcceptMessages(isCodecAcceptMessages());
+            }
+            connection = warmConnection.getConnection();
+        } else {
+            handler = createHandler(JMeterContextService.getContext().getThread().getThreadName(), uri);
+            Future<WebSocket.Connection> futureConnection = WebSocketClients.getClient().open(uri, handler);
+            connection = futureConnection.get();
+        }
+        collector = handler.getCollector();
+        if (SEND_MODE_ASYNC.equals(getSendMode())) {
+            if (outboundQueue != null) {
+                outboundQueue.clear();
+            }
+            outboundQueue = new OutboundQueue(connection, getOutboundQueueSize());
+        }
+        initialized = true;
+    }
+    private MessageCollector createCollector() {
+        return new MessageCollector(getRecvMode(),
+                WebSocketClients.compile(getRecvMessage()),
+                WebSocketClients.compile(getRecvTerminator()),
+                getRecvCount());
+    }
+
+    private StreamReceiver createStreamReceiver() throws UnsupportedEncodingException {
+        return isStreaming() ? new StreamReceiver(getStreamMatchBytes()) : null;
+    }
+
+    /*
+     * The settings a connection is opened with. A pre-warmed connection is
+     * only adopted by a thread whose settings evaluate to the same key.
+     */
+    private String getConnectionKey(URI uri) {
+        return uri + "\n" + isStreaming() + "\n" + getCodec() + "\n" + getCodecOptions() + "\n" + getRecordFile();
+    }
+
+    /*
+     * A reference to a variable not defined when the test starts, as is,
+     * or quoted by the URI.
+     */
+    private static boolean isUnresolved(String value) {
+        return value.contains("${") || value.contains("$%7B"); // $NON-NLS-1$ $NON-NLS-2$
+    }
+
+    private WebSocketHandler createHandler(String name, URI uri) throws IOException {
+        MessageCollector messageCollector = createCollector();
+        StreamReceiver streamReceiver = createStreamReceiver();
+        MessageCodec codec = MessageCodecs.create(getCodec(), getCodecOptions());
+        CodecSession codecSession = null;
+        if (codec != null) {
+            codecSession = new CodecSession(codec, messageCollector);
+            codecSession.setAcceptMessages(isCodecAcceptMessages());
+        }
+        WebSocketHandler webSocketHandler = new WebSocketHandler(name, messageCollector, streamReceiver, codecSession);
+        if (StringUtils.isNotEmpty(getRecordFile())) {
+            webSocketHandler.setRecorder(SessionRecorder.open(getRecordFile()), uri.toString());
+        }
+        return webSocketHandler;
+    }
+
+    /**
+     * Opens the pre-warm connections at the configured rate, and waits until
+     * all of them are open, the failure threshold is hit or the timeout elapses.
+     * This runs before the test threads start, so they start with a fully
+     * connected population.
+     */
+    private void prewarm() {
+        int total = getPrewarmConnections();
+        if (total <= 0) {
+            return;
+        }
+        URI uri;
+        try {
+            uri = getUri();
+        } catch (URISyntaxException e) {
+            if (isUnresolved(getPath())) {
+                log.warn("Not pre-warming connections for " + getName()
+                        + ": its URI refers to variables not defined when the test starts.");
+            } else {
+                log.error("Can't pre-warm connections for " + getName(), e);
+            }
+            return;
+        }
+        if (isUnresolved(getConnectionKey(uri))) {
+            log.warn("Not pre-warming connections for " + getName()
+                    + ": its URI, codec or codec options refer to variables not defined when the test starts.");
+            return;
+        }
+        int maxFailures = getPrewarmMaxFailures();
+        double rate = getPrewarmRate();
+        long start = System.currentTimeMillis();
+        long deadline = start + getPrewarmTimeout();
+        log.info("Pre-warming " + total + " connections to " + uri);
+
+        LinkedList<Future<WebSocket.Connection>> pending = new LinkedList<Future<WebSocket.Connection>>();
+        LinkedList<WebSocketHandler> pendingHandlers = new LinkedList<WebSocketHandler>();
+        int opened = 0;
+        int failures = 0;
+        try {
+            for (int i = 0; i < total && failures <= maxFailures; i++) {
+                if (rate > 0) {
+                    long wait = start + (long) (i * 1000 / rate) - System.currentTimeMillis();
+                    if (wait > 0) {
+                        Thread.sleep(wait);
+                    }
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    break;
+                }
+                WebSocketHandler warmHandler = createHandler("prewarm-" + i, uri);
+                pending.add(WebSocketClients.getClient().open(uri, warmHandler));
+                pendingHandlers.add(warmHandler);
+                // Collect the handshakes already completed, to detect failures early.
+                while (!pending.isEmpty() && pending.getFirst().isDone()) {
+                    if (adoptWarmConnection(uri, pending.removeFirst(), pendingHandlers.removeFirst(), 0)) {
+                        opened++;
+                    } else {
+                        failures++;
                     }
                 }
             }
-
-            @Override
-            public void onOpen(Connection connection) {
-                log.debug("Connect " + threadName);
+            while (!pending.isEmpty() && failures <= maxFailures) {
+                long rest = Math.max(0L, deadline - System.currentTimeMillis());
+                if (adoptWarmConnection(uri, pending.removeFirst(), pendingHandlers.removeFirst(), rest)) {
+                    opened++;
+                } else {
+                    failures++;
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Can't pre-warm connections for " + getName(), e);
+        }
+        for (Future<WebSocket.Connection> future : pending) {
+            future.cancel(true);
+        }
 
-            @Override
-            public void onClose(int i, String s) {
-                log.debug("Disconnect " + threadName);
-            }
-        });
-        connection = futureConnection.get();
-        samplerConnections.add(connection);
-        initialized = true;
+        String summary = "Pre-warmed " + opened + " of " + total + " connections to " + uri
+                + " in " + (System.currentTimeMillis() - start) + " ms, " + failures + " failed.";
+        if (failures > maxFailures || opened < total) {
+            log.error(summary + " The remaining connections are opened by the threads.");
+        } else {
+            log.info(summary);
+        }
+    }
+
+    private boolean adoptWarmConnection(URI uri, Future<WebSocket.Connection> future,
+                                        WebSocketHandler warmHandler, long timeout) throws InterruptedException {
+        try {
+            WebSocket.Connection warm = future.get(timeout, TimeUnit.MILLISECONDS);
+            PrewarmPool.offer(getConnectionKey(uri), new PrewarmPool.WarmConnection(warm, warmHandler));
+            return true;
+        } catch (ExecutionException e) {
+            log.debug("Pre-warm connection failed: " + e.getMessage());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.debug("Pre-warm connection timed out.");
+        }
+        return false;
     }
+
+    /**
+     * In aggregate mode, the exchanges are rolled into one summary result
+     * per interval, and null is returned for the others. The pending summary
+     * is also returned by the last exchange of the sampler in the thread, as
+     * a thread can't report a result once it stops sampling.
+     */
     @Override
     public SampleResult sample(Entry entry) {
+        boolean aggregate = isAggregate();
+        SampleResult res = exchange(aggregate);
+        if (!aggregate) {
+            return res;
+        }
+        if (aggregator == null) {
+            aggregator = new SampleAggregator(getAggregateInterval(), getAggregateMaxFailures());
+        }
+        aggregator.add(res);
+        maxExchangeTime = Math.max(maxExchangeTime, res.getTime());
+        long now = System.currentTimeMillis();
+        if (aggregator.isDue(now) || isLastExchange(now)) {
+            return aggregator.flush(getName());
+        }
+        return null;
+    }
+
+    /*
+     * True for the last exchange of the sampler in the thread: on the last
+     * iteration of a thread group with a loop count, once the sampler has run
+     * as many times as in the previous iterations (it may be in a nested
+     * loop), or the first exchange which another one of the same length
+     * wouldn't follow before the scheduler stops the thread.
+     */
+    private boolean isLastExchange(long now) {
+        JMeterContext context = JMeterContextService.getContext();
+        int iteration = context.getVariables().getIteration();
+        if (iteration != currentIteration) {
+            runsPerIteration = Math.max(runsPerIteration, runsInIteration);
+            runsInIteration = 0;
+            currentIteration = iteration;
+        }
+        runsInIteration++;
+
+        AbstractThreadGroup group = context.getThreadGroup();
+        if (!(group instanceof ThreadGroup)) {
+            return false;
+        }
+        ThreadGroup threadGroup = (ThreadGroup) group;
+        Controller controller = threadGroup.getSamplerController();
+        if (controller instanceof LoopController) {
+            int loops = ((LoopController) controller).getLoops();
+            if (loops > 1 && iteration >= loops && runsInIteration == runsPerIteration) {
+                return true;
+            }
+        }
+        if (threadGroup.getScheduler() && !tailFlushed) {
+            long end = 0L;
+            if (threadGroup.getDuration() > 0 && threadStartTime > 0) {
+                end = threadStartTime + threadGroup.getDuration() * 1000L;
+            } else if (threadGroup.getEndTime() > 0) {
+                end = threadGroup.getEndTime();
+            }
+            tailFlushed = end > 0 && now + maxExchangeTime >= end;
+            return tailFlushed;
+        }
+        return false;
+    }
+
+    /**
+     * In aggregate mode, a successful exchange only keeps what the summary
+     * uses (times, bytes, the health flag). The sampler data, the response
+     * data and the headers are kept for the failures, which are attached to
+     * the summary.
+     */
+    private SampleResult exchange(boolean aggregate) {
         SampleResult res = new SampleResult();
         res.setSampleLabel(getName());
 
@@ -129,37 +397,211 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
                 return res;
             }
         }
+        if (isStreaming()) {
+            return sampleStream(res);
+        }
         String message = getPropertyAsString(SEND_MESSAGE, "default message");
-        res.setSamplerData(message);
+        StringBuilder headers = null;
+        if (!aggregate) {
+            res.setSamplerData(message);
+            headers = new StringBuilder();
+        }
+        CodecSession codecSession = null;
+        int depth = -1;
         res.sampleStart();
         try {
-            if (connection.isOpen()) {
-                res.setDataEncoding(getContentEncoding());
-                connection.sendMessage(message);
-            } else {
+            if (!connection.isOpen()) {
                 initialize();
             }
-            synchronized (this) {
-                wait(getRecvTimeout());
+            res.setDataEncoding(getContentEncoding());
+            codecSession = handler.getCodecSession();
+            String frame = message;
+            if (codecSession != null) {
+                if (!codecSession.awaitReady(getRecvTimeout())) {
+                    throw new TimeoutException("The " + codecSession.getCodecName() + " handshake is not complete.");
+                }
+                // The new id is awaited before collecting, so a late reply to the previous request is ignored.
+                frame = codecSession.prepare(message);
+            }
+            collector.arm();
+            if (outboundQueue != null) {
+                depth = outboundQueue.getDepth();
+                boolean enqueued = outboundQueue.offer(frame, getOutboundPolicy(), getRecvTimeout());
+                if (!enqueued) {
+                    OutboundQueue.setDroppedResult(res);
+                    return res;
+                }
+            } else {
+                connection.sendMessage(frame);
             }
-            if (responseMessage == null) {
+            handler.recordSent(frame);
+            boolean received = collector.await(getRecvTimeout());
+            setReceivedResult(res, collector, headers);
+            if (codecSession != null && codecSession.getError() != null) {
+                res.setResponseCode("500");
+                throw new IOException(codecSession.getError());
+            }
+            if (!received) {
                 res.setResponseCode("204");
                 throw new TimeoutException("No content (probably timeout).");
             }
             res.setResponseCodeOK();
-            res.setResponseData(responseMessage, getContentEncoding());
             isOK = true;
         } catch (Exception e) {
             log.debug(e.getMessage());
             res.setResponseMessage(e.getMessage());
+        } finally {
+            collector.disarm();
+            if (codecSession != null) {
+                codecSession.release();
+            }
+            res.sampleEnd();
+            res.setSuccessful(isOK);
+            if (headers == null && !isOK) {
+                // An aggregated failure is attached to the summary, with its details.
+                res.setSamplerData(message);
+                headers = new StringBuilder();
+                setReceivedData(res, collector, headers);
+            }
+            if (headers != null) {
+                if (depth >= 0) {
+                    headers.append("Outbound-Queue-Depth: ").append(depth).append("\n")
+                            .append("Outbound-Time-To-Wire-Avg: ").append(outboundQueue.getAverageTimeToWire()).append("\n")
+                            .append("Outbound-Time-To-Wire-Max: ").append(outboundQueue.getMaxTimeToWire()).append("\n")
+                            .append("Outbound-Dropped: ").append(outboundQueue.getDroppedCount()).append("\n")
+                            .append("Outbound-Errors: ").append(outboundQueue.getErrorCount()).append("\n");
+                }
+                GeneratorHealth.annotate(res, headers);
+                res.setResponseHeaders(headers.toString());
+            } else {
+                GeneratorHealth.annotate(res);
+            }
         }
-        res.sampleEnd();
-        res.setSuccessful(isOK);
 
         return res;
     }
 
 
+    /**
+     * Sends the payload as a fragmented message and consumes the reply
+     * fragment by fragment. Neither of them is held in memory as a whole.
+     */
+    private SampleResult sampleStream(SampleResult res) {
+        boolean isOK = false;
+        StreamReceiver receiver = handler.getStreamReceiver();
+        String file = getStreamFile();
+        res.setSamplerData(StringUtils.isNotEmpty(file) ? file : getStreamSize() + " bytes (generated)");
+        res.sampleStart();
+        long sent = 0L;
+        try {
+            if (!connection.isOpen()) {
+                initialize();
+                receiver = handler.getStreamReceiver();
+            }
+            WebSocket.FrameConnection frameConnection = handler.getFrameConnection();
+            boolean awaitReply = isStreamAwaitReply();
+            if (awaitReply) {
+                receiver.arm();
+            }
+            StreamSender sender = new StreamSender(frameConnection, getStreamFragmentSize());
+            if (StringUtils.isNotEmpty(file)) {
+                File payload = new File(file);
+                InputStream in = new FileInputStream(payload);
+                try {
+                    sent = sender.send(in, payload.length());
+                } finally {
+                    JOrphanUtils.closeQuietly(in);
+                }
+            } else if (getStreamSize() > 0) {
+                sent = sender.sendGenerated(getStreamSize());
+            }
+            if (awaitReply) {
+                boolean received = receiver.await(getRecvTimeout());
+                if (receiver.getFrames() > 0) {
+                    res.setLatency(receiver.getFirstTime() - res.getStartTime());
+                }
+                if (!received) {
+                    res.setResponseCode("204");
+                    throw new TimeoutException(receiver.isComplete()
+                            ? "The message doesn't contain the expected content."
+                            : "No content (probably timeout).");
+                }
+            }
+            res.setResponseCodeOK();
+            res.setResponseMessageOK();
+            isOK = true;
+        } catch (Exception e) {
+            log.debug(e.getMessage());
+            res.setResponseMessage(e.getMessage());
+        } finally {
+            if (receiver != null) {
+                receiver.disarm();
+            }
+            res.sampleEnd();
+            res.setSuccessful(isOK);
+        }
+
+        long received = (receiver != null) ? receiver.getBytes() : 0L;
+        long elapsed = res.getTime();
+        streamBytesTotal += sent + received;
+        streamTimeTotal += elapsed;
+        res.setBytes((int) Math.min(Integer.MAX_VALUE, received));
+        StringBuilder headers = new StringBuilder();
+        headers.append("Stream-Sent-Bytes: ").append(sent).append("\n")
+                .append("Stream-Received-Bytes: ").append(received).append("\n");
+        if (receiver != null) {
+            headers.append("Stream-Received-Frames: ").append(receiver.getFrames()).append("\n");
+            if (receiver.getHash() != null) {
+                headers.append("Stream-Received-SHA1: ").append(receiver.getHash()).append("\n");
+            }
+        }
+        headers.append("Stream-Throughput-MBps: ").append(megabytesPerSecond(sent + received, elapsed)).append("\n")
+                .append("Stream-Connection-Throughput-MBps: ")
+                .append(megabytesPerSecond(streamBytesTotal, streamTimeTotal)).append("\n");
+        GeneratorHealth.annotate(res, headers);
+        res.setResponseHeaders(headers.toString());
+        return res;
+    }
+
+    private static String megabytesPerSecond(long bytes, long millis) {
+        if (millis <= 0) {
+            return "0";
+        }
+        return String.format(java.util.Locale.ENGLISH, "%.3f", (bytes / 1048576.0) / (millis / 1000.0));
+    }
+
+    /**
+     * Fills the result with the collected frames.
+     * Latency is the time to the first frame, and the time to the last frame
+     * and the frame count are reported in the response headers.
+     * Without headers (a successful exchange in aggregate mode), only the
+     * latency and the size of the frames are set.
+     */
+    private void setReceivedResult(SampleResult res, MessageCollector collector, StringBuilder headers)
+            throws UnsupportedEncodingException {
+        if (collector.getCount() == 0) {
+            return;
+        }
+        res.setLatency(collector.getFirstTime() - res.getStartTime());
+        if (headers == null) {
+            res.setBytes((int) Math.min(Integer.MAX_VALUE, collector.getEncodedLength(getContentEncoding())));
+            return;
+        }
+        setReceivedData(res, collector, headers);
+    }
+
+    private void setReceivedData(SampleResult res, MessageCollector collector, StringBuilder headers) {
+        List<String> messages = collector.getMessages();
+        if (messages.isEmpty()) {
+            return;
+        }
+        long start = res.getStartTime();
+        res.setResponseData(StringUtils.join(messages, "\n"), getContentEncoding());
+        headers.append("Received-Count: ").append(messages.size()).append("\n")
+                .append("Time-To-First-Frame: ").append(collector.getFirstTime() - start).append("\n")
+                .append("Time-To-Last-Frame: ").append(collector.getLastTime() - start).append("\n");
+    }
+
     @Override
     public void setName(String name) {
         if (name != null)
@@ -372,7 +814,221 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
     }
 
     public long getRecvTimeout() {
-        return getPropertyAsLong(RECV_TIMEOUT, 20000L);
+        long timeout = getPropertyAsLong(RECV_TIMEOUT, DEFAULT_RECV_TIMEOUT);
+        return timeout > 0 ? timeout : DEFAULT_RECV_TIMEOUT;
+    }
+
+    public void setRecvMode(String value) {
+        setProperty(RECV_MODE, value);
+    }
+
+    public String getRecvMode() {
+        return getPropertyAsString(RECV_MODE, MessageCollector.MODE_FIRST);
+    }
+
+    public void setRecvCount(int value) {
+        setProperty(new IntegerProperty(RECV_COUNT, value));
+    }
+
+    public int getRecvCount() {
+        return getPropertyAsInt(RECV_COUNT, 1);
+    }
+
+    public void setRecvTerminator(String value) {
+        setProperty(RECV_TERMINATOR, value);
+    }
+
+    public String getRecvTerminator() {
+        return getPropertyAsString(RECV_TERMINATOR);
+    }
+
+    public void setSendMode(String value) {
+        setProperty(SEND_MODE, value);
+    }
+
+    public String getSendMode() {
+        return getPropertyAsString(SEND_MODE, SEND_MODE_SYNC);
+    }
+
+    public void setOutboundQueueSize(int value) {
+        setProperty(new IntegerProperty(OUTBOUND_QUEUE_SIZE, value));
+    }
+
+    public int getOutboundQueueSize() {
+        int size = getPropertyAsInt(OUTBOUND_QUEUE_SIZE, DEFAULT_OUTBOUND_QUEUE_SIZE);
+        return size > 0 ? size : DEFAULT_OUTBOUND_QUEUE_SIZE;
+    }
+
+    public void setOutboundPolicy(String value) {
+        setProperty(OUTBOUND_POLICY, value);
+    }
+
+    public String getOutboundPolicy() {
+        return getPropertyAsString(OUTBOUND_POLICY, OutboundQueue.POLICY_WAIT);
+    }
+
+    public void setStreaming(boolean value) {
+        setProperty(new BooleanProperty(STREAMING, value));
+    }
+
+    public boolean isStreaming() {
+        return getPropertyAsBoolean(STREAMING, false);
+    }
+
+    public void setStreamFile(String value) {
+        setProperty(STREAM_FILE, value);
+    }
+
+    public String getStreamFile() {
+        return getPropertyAsString(STREAM_FILE);
+    }
+
+    public void setStreamSize(long value) {
+        setProperty(new LongProperty(STREAM_SIZE, value));
+    }
+
+    public long getStreamSize() {
+        return getPropertyAsLong(STREAM_SIZE, 0L);
+    }
+
+    public void setStreamFragmentSize(int value) {
+        setProperty(new IntegerProperty(STREAM_FRAGMENT_SIZE, value));
+    }
+
+    public int getStreamFragmentSize() {
+        int size = getPropertyAsInt(STREAM_FRAGMENT_SIZE, DEFAULT_STREAM_FRAGMENT_SIZE);
+        return size > 0 ? size : DEFAULT_STREAM_FRAGMENT_SIZE;
+    }
+
+    public void setStreamMatch(String value) {
+        setProperty(STREAM_MATCH, value);
+    }
+
+    public String getStreamMatch() {
+        return getPropertyAsString(STREAM_MATCH);
+    }
+
+    private byte[] getStreamMatchBytes() throws UnsupportedEncodingException {
+        String match = getStreamMatch();
+        if (StringUtils.isEmpty(match)) {
+            return null;
+        }
+        String encoding = getContentEncoding();
+        return StringUtils.isEmpty(encoding) ? match.getBytes("UTF-8") : match.getBytes(encoding);
+    }
+
+    public void setStreamAwaitReply(boolean value) {
+        setProperty(new BooleanProperty(STREAM_AWAIT_REPLY, value));
+    }
+
+    public boolean isStreamAwaitReply() {
+        return getPropertyAsBoolean(STREAM_AWAIT_REPLY, true);
+    }
+
+    public void setAggregate(boolean value) {
+        setProperty(new BooleanProperty(AGGREGATE, value));
+    }
+
+    public boolean isAggregate() {
+        return getPropertyAsBoolean(AGGREGATE, false);
+    }
+
+    public void setAggregateInterval(long value) {
+        setProperty(new LongProperty(AGGREGATE_INTERVAL, value));
+    }
+
+    public long getAggregateInterval() {
+        long interval = getPropertyAsLong(AGGREGATE_INTERVAL, DEFAULT_AGGREGATE_INTERVAL);
+        return interval > 0 ? interval : DEFAULT_AGGREGATE_INTERVAL;
+    }
+
+    public void setAggregateMaxFailures(int value) {
+        setProperty(new IntegerProperty(AGGREGATE_MAX_FAILURES, value));
+    }
+
+    public int getAggregateMaxFailures() {
+        if (StringUtils.isBlank(getPropertyAsString(AGGREGATE_MAX_FAILURES))) {
+            return DEFAULT_AGGREGATE_MAX_FAILURES;
+        }
+        return getPropertyAsInt(AGGREGATE_MAX_FAILURES, DEFAULT_AGGREGATE_MAX_FAILURES);
+    }
+
+    public void setPrewarmConnections(int value) {
+        setProperty(new IntegerProperty(PREWARM_CONNECTIONS, value));
+    }
+
+    public int getPrewarmConnections() {
+        return getPropertyAsInt(PREWARM_CONNECTIONS, 0);
+    }
+
+    public void setPrewarmRate(double value) {
+        setProperty(new DoubleProperty(PREWARM_RATE, value));
+    }
+
+    /**
+     * @return connections opened per second, or 0 for no limit
+     */
+    public double getPrewarmRate() {
+        return getPropertyAsDouble(PREWARM_RATE);
+    }
+
+    public void setPrewarmMaxFailures(int value) {
+        setProperty(new IntegerProperty(PREWARM_MAX_FAILURES, value));
+    }
+
+    public int getPrewarmMaxFailures() {
+        return getPropertyAsInt(PREWARM_MAX_FAILURES, 0);
+    }
+
+    public void setPrewarmTimeout(long value) {
+        setProperty(new LongProperty(PREWARM_TIMEOUT, value));
+    }
+
+    public long getPrewarmTimeout() {
+        long timeout = getPropertyAsLong(PREWARM_TIMEOUT, DEFAULT_PREWARM_TIMEOUT);
+        return timeout > 0 ? timeout : DEFAULT_PREWARM_TIMEOUT;
+    }
+
+    public void setCodec(String value) {
+        setProperty(CODEC, value);
+    }
+
+    /**
+     * @return the name of the subprotocol codec, or an empty string for raw frames
+     */
+    public String getCodec() {
+        return getPropertyAsString(CODEC);
+    }
+
+    public void setCodecOptions(String value) {
+        setProperty(CODEC_OPTIONS, value);
+    }
+
+    public String getCodecOptions() {
+        return getPropertyAsString(CODEC_OPTIONS);
+    }
+
+    public void setCodecAcceptMessages(boolean value) {
+        setProperty(new BooleanProperty(CODEC_ACCEPT_MESSAGES, value));
+    }
+
+    /**
+     * @return true if messages not correlated to the request (subscriptions, pushed events)
+     * complete the sample as well as the correlated reply
+     */
+    public boolean isCodecAcceptMessages() {
+        return getPropertyAsBoolean(CODEC_ACCEPT_MESSAGES, false);
+    }
+
+    public void setRecordFile(String value) {
+        setProperty(RECORD_FILE, value);
+    }
+
+    /**
+     * @return the session log the frames are recorded to, or an empty string
+     */
+    public String getRecordFile() {
+        return getPropertyAsString(RECORD_FILE);
     }
 
     public void setArguments(Arguments value) {
@@ -490,10 +1146,28 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
 
     @Override
     public void testStarted(String host) {
-        try {
-            webSocketClientFactory.start();
-        } catch(Exception e) {
-            log.error("Can't start WebSocketClientFactory", e);
+        WebSocketClients.start();
+        GeneratorHealth.start();
+        prewarm();
+    }
+
+    @Override
+    public void threadStarted() {
+        threadStartTime = System.currentTimeMillis();
+    }
+
+    /**
+     * The pending summary is returned by the last exchange when it can be
+     * told apart. Otherwise (a single or infinite loop, a stopped test) the
+     * thread leaves one which can't be returned any more, so it is logged as
+     * a warning.
+     */
+    @Override
+    public void threadFinished() {
+        if (aggregator != null && aggregator.getCount() > 0) {
+            log.warn("Unreported summary of " + getName() + " in "
+                    + JMeterContextService.getContext().getThread().getThreadName() + ":\n"
+                    + aggregator.summary());
         }
     }
 
@@ -504,14 +1178,11 @@ public class WebSocketSampler extends AbstractSampler implements TestStateListen
 
     @Override
     public void testEnded(String host) {
-        try {
-            for(WebSocket.Connection connection : samplerConnections) {
-                connection.close();
-            }
-            webSocketClientFactory.stop();
-        } catch (Exception e) {
-            log.error("sampler error when close.", e);
-        }
+        GeneratorHealth.stop();
+        PrewarmPool.clear();
+        ConnectionRegistry.closeAll();
+        WebSocketClients.stop();
+        SessionRecorder.closeAll();
     }
 
     /**
@@ -0,0 +1,118 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.apache.jmeter.samplers.Entry;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.property.IntegerProperty;
+import org.apache.jmeter.testelement.property.LongProperty;
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+
+/**
+ * Sends a message on a named connection without waiting for a reply.
+ *
+ * @author kawasima
+ */
+public class WebSocketSendSampler extends AbstractConnectionSampler {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    public static final String SEND_MESSAGE = "WebSocketSendSampler.sendMessage";
+    public static final String SEND_MODE = "WebSocketSendSampler.sendMode";
+    public static final String OUTBOUND_QUEUE_SIZE = "WebSocketSendSampler.outboundQueueSize";
+    public static final String OUTBOUND_POLICY = "WebSocketSendSampler.outboundPolicy";
+    public static final String SEND_TIMEOUT = "WebSocketSendSampler.sendTimeout";
+
+    private static final int DEFAULT_OUTBOUND_QUEUE_SIZE = 100;
+    private static final long DEFAULT_SEND_TIMEOUT = 20000L;
+
+    @Override
+    public SampleResult sample(Entry entry) {
+        SampleResult res = new SampleResult();
+        res.setSampleLabel(getName());
+        String message = getSendMessage();
+        res.setSamplerData(message);
+
+        WebSocketSession session = lookupOpenSession(res);
+        if (session == null) {
+            return res;
+        }
+
+        boolean isOK = false;
+        res.sampleStart();
+        try {
+            if (WebSocketSampler.SEND_MODE_ASYNC.equals(getSendMode())) {
+                OutboundQueue queue = session.getOutboundQueue(getOutboundQueueSize());
+                int depth = queue.getDepth();
+                boolean enqueued = queue.offer(message, getOutboundPolicy(), getSendTimeout());
+                res.setResponseHeaders("Outbound-Queue-Depth: " + depth + "\n"
+                        + "Outbound-Time-To-Wire-Avg: " + queue.getAverageTimeToWire() + "\n"
+                        + "Outbound-Time-To-Wire-Max: " + queue.getMaxTimeToWire() + "\n"
+                        + "Outbound-Dropped: " + queue.getDroppedCount() + "\n"
+                        + "Outbound-Errors: " + queue.getErrorCount() + "\n");
+                if (enqueued) {
+                    res.setResponseCodeOK();
+                    res.setResponseMessage("Enqueued.");
+                    isOK = true;
+                } else {
+                    OutboundQueue.setDroppedResult(res);
+                }
+            } else {
+                session.getConnection().sendMessage(message);
+                res.setResponseCodeOK();
+                res.setResponseMessageOK();
+                isOK = true;
+            }
+        } catch (Exception e) {
+            log.debug(e.getMessage());
+            res.setResponseMessage(e.toString());
+        } finally {
+            res.sampleEnd();
+            res.setSuccessful(isOK);
+        }
+        StringBuilder headers = new StringBuilder(res.getResponseHeaders());
+        GeneratorHealth.annotate(res, headers);
+        res.setResponseHeaders(headers.toString());
+        return res;
+    }
+
+    public void setSendMessage(String value) {
+        setProperty(SEND_MESSAGE, value);
+    }
+
+    public String getSendMessage() {
+        return getPropertyAsString(SEND_MESSAGE);
+    }
+
+    public void setSendMode(String value) {
+        setProperty(SEND_MODE, value);
+    }
+
+    public String getSendMode() {
+        return getPropertyAsString(SEND_MODE, WebSocketSampler.SEND_MODE_SYNC);
+    }
+
+    public void setOutboundQueueSize(int value) {
+        setProperty(new IntegerProperty(OUTBOUND_QUEUE_SIZE, value));
+    }
+
+    public int getOutboundQueueSize() {
+        int size = getPropertyAsInt(OUTBOUND_QUEUE_SIZE, DEFAULT_OUTBOUND_QUEUE_SIZE);
+        return size > 0 ? size : DEFAULT_OUTBOUND_QUEUE_SIZE;
+    }
+
+    public void setOutboundPolicy(String value) {
+        setProperty(OUTBOUND_POLICY, value);
+    }
+
+    public String getOutboundPolicy() {
+        return getPropertyAsString(OUTBOUND_POLICY, OutboundQueue.POLICY_WAIT);
+    }
+
+    public void setSendTimeout(long value) {
+        setProperty(new LongProperty(SEND_TIMEOUT, value));
+    }
+
+    public long getSendTimeout() {
+        long timeout = getPropertyAsLong(SEND_TIMEOUT, DEFAULT_SEND_TIMEOUT);
+        return timeout > 0 ? timeout : DEFAULT_SEND_TIMEOUT;
+    }
+}
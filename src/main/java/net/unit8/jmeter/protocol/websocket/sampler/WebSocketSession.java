@@ -0,0 +1,196 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.apache.jorphan.logging.LoggingManager;
+import org.apache.log.Logger;
+import org.eclipse.jetty.websocket.WebSocket;
+
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+
+/**
+ * A connection shared between the open, send, receive and close samplers.
+ *
+ * Text frames arriving between samples are kept in a bounded inbound buffer
+ * until a receive sampler consumes them. When the buffer is full, the oldest
+ * frame is discarded.
+ *
+ * The close handshake completes when the close frame of the server arrives:
+ * Connection.close() calls onClose before the server has answered.
+ *
+ * @author kawasima
+ */
+public class WebSocketSession implements WebSocket.OnTextMessage, WebSocket.OnControl {
+    private static final Logger log = LoggingManager.getLoggerForClass();
+
+    private static final int NO_STATUS_CODE = 1005;
+    private static final Charset UTF8 = Charset.forName("UTF-8"); // $NON-NLS-1$
+
+    private final String name;
+    private final int inboundCapacity;
+
+    private volatile Connection connection;
+    // Allocated on the first frame, so an idle connection doesn't carry it.
+    private ArrayDeque<InboundFrame> inbound = null;
+    private long droppedCount = 0L;
+    private boolean closed = false;
+    private boolean closeReceived = false;
+    private int closeCode = 0;
+    private String closeReason;
+    private OutboundQueue outboundQueue;
+
+    public WebSocketSession(String name, int inboundCapacity) {
+        this.name = name;
+        this.inboundCapacity = Math.max(1, inboundCapacity);
+    }
+
+    @Override
+    public void onOpen(Connection connection) {
+        this.connection = connection;
+        ConnectionRegistry.track(connection);
+        log.debug("Connect " + name);
+    }
+
+    @Override
+    public synchronized void onMessage(String data) {
+        if (inbound == null) {
+            inbound = new ArrayDeque<InboundFrame>();
+        }
+        if (inbound.size() >= inboundCapacity) {
+            inbound.poll();
+            droppedCount++;
+        }
+        inbound.add(new InboundFrame(data, System.currentTimeMillis()));
+        notifyAll();
+    }
+
+    /**
+     * Keeps the status code and the reason of the close frame of the server.
+     * The frame is left to the connection, which answers it.
+     */
+    @Override
+    public boolean onControl(byte controlCode, byte[] data, int offset, int length) {
+        if (controlCode == ConnectionRegistry.OP_CLOSE) {
+            synchronized (this) {
+                closeReceived = true;
+                if (length >= 2) {
+                    closeCode = ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+                    closeReason = new String(data, offset + 2, length - 2, UTF8);
+                } else {
+                    closeCode = NO_STATUS_CODE;
+                    closeReason = null;
+                }
+                notifyAll();
+            }
+        }
+        ConnectionRegistry.onControl(connection, controlCode);
+        return false;
+    }
+
+    @Override
+    public synchronized void onClose(int closeCode, String message) {
+        closed = true;
+        notifyAll();
+        ConnectionRegistry.closed(this);
+        log.debug("Disconnect " + name);
+    }
+
+    /**
+     * Takes the oldest buffered frame, waiting for one if the buffer is empty.
+     *
+     * @return the frame, or null if none arrives in time or the connection is closed
+     */
+    public synchronized InboundFrame poll(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        long rest = timeout;
+        while ((inbound == null || inbound.isEmpty()) && !closed && rest > 0) {
+            wait(rest);
+            rest = deadline - System.currentTimeMillis();
+        }
+        return (inbound == null) ? null : inbound.poll();
+    }
+
+    /**
+     * Waits for the close frame of the server.
+     *
+     * @return true if the server has answered the close
+     */
+    public synchronized boolean awaitClose(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        long rest = timeout;
+        while (!closeReceived && rest > 0) {
+            wait(rest);
+            rest = deadline - System.currentTimeMillis();
+        }
+        return closeReceived;
+    }
+
+    /**
+     * Returns the outbound queue of the connection, creating it on first use.
+     */
+    public synchronized OutboundQueue getOutboundQueue(int capacity) {
+        if (outboundQueue == null) {
+            outboundQueue = new OutboundQueue(connection, capacity);
+        }
+        return outboundQueue;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public boolean isOpen() {
+        Connection c = connection;
+        return c != null && c.isOpen();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the status code of the close frame of the server.
+     */
+    public synchronized int getCloseCode() {
+        return closeCode;
+    }
+
+    /**
+     * Returns the reason of the close frame of the server.
+     */
+    public synchronized String getCloseReason() {
+        return closeReason;
+    }
+
+    public synchronized int getInboundDepth() {
+        return (inbound == null) ? 0 : inbound.size();
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * A text frame and the time it arrived.
+     */
+    public static class InboundFrame {
+        private final String message;
+        private final long time;
+
+        InboundFrame(String message, long time) {
+            this.message = message;
+            this.time = time;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public long getTime() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package net.unit8.jmeter.protocol.websocket.codec;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the built-in codecs
+ *
+ * @author kawasima
+ */
+public class MessageCodecTest {
+    private static Properties options(String... keyValues) {
+        Properties options = new Properties();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            options.setProperty(keyValues[i], keyValues[i + 1]);
+        }
+        return options;
+    }
+
+    @Test
+    public void stompHandshakeSubscribesAndNegotiatesHeartbeat() {
+        StompCodec codec = new StompCodec();
+        codec.configure(options("destination", "/queue/a", "subscribe", "/topic/b", "ack", "client-individual"));
+
+        List<String> open = codec.open();
+        assertEquals(1, open.size());
+        assertTrue(open.get(0).startsWith("CONNECT\n"));
+        assertTrue(open.get(0).contains("heart-beat:10000,10000\n"));
+        assertFalse(codec.isReady());
+
+        CodecFrame connected = codec.decode("CONNECTED\nversion:1.2\nheart-beat:0,5000\n\n\u0000");
+        assertEquals(CodecFrame.CONNECTED, connected.getType());
+        assertTrue(codec.isReady());
+        assertTrue(connected.getReply().startsWith("SUBSCRIBE\n"));
+        assertTrue(connected.getReply().contains("destination:/topic/b\n"));
+        assertEquals(10000L, codec.getHeartbeatInterval());
+    }
+
+    @Test
+    public void stompCorrelatesReceiptsAndAcksMessages() {
+        StompCodec codec = new StompCodec();
+        codec.configure(options("destination", "/queue/a", "ack", "client-individual"));
+
+        String send = codec.encode("hello", "7");
+        assertTrue(send.startsWith("SEND\ndestination:/queue/a\n"));
+        assertTrue(send.contains("receipt:7\n"));
+        assertTrue(send.endsWith("\n\nhello\u0000"));
+
+        CodecFrame receipt = codec.decode("RECEIPT\nreceipt-id:7\n\n\u0000");
+        assertEquals(CodecFrame.REPLY, receipt.getType());
+        assertEquals("7", receipt.getId());
+
+        CodecFrame message = codec.decode("MESSAGE\nsubscription:sub-0\nmessage-id:1\nack:m\\c1\n\nbody\u0000");
+        assertEquals(CodecFrame.MESSAGE, message.getType());
+        assertEquals("body", message.getPayload());
+        assertEquals("ACK\nid:m\\c1\n\n\u0000", message.getReply());
+
+        assertNull(codec.decode("\n"));
+
+        CodecFrame error = codec.decode("ERROR\nmessage:bad\nreceipt-id:7\n\ndetail\u0000");
+        assertEquals(CodecFrame.ERROR, error.getType());
+        assertEquals("7", error.getId());
+        assertEquals("bad\ndetail", error.getPayload());
+    }
+
+    @Test
+    public void stompSkipsHeartbeatsAndAcceptsCrLf() {
+        StompCodec codec = new StompCodec();
+        codec.configure(options("destination", "/queue/a"));
+
+        assertNull(codec.decode("\r\n\n"));
+
+        CodecFrame receipt = codec.decode("\n\r\nRECEIPT\nreceipt-id:7\n\n\u0000");
+        assertEquals(CodecFrame.REPLY, receipt.getType());
+        assertEquals("7", receipt.getId());
+
+        CodecFrame message = codec.decode("MESSAGE\r\nsubscription:sub-0\r\ncorrelation-id:8\r\n\r\nline 1\r\nline 2\u0000");
+        assertEquals(CodecFrame.REPLY, message.getType());
+        assertEquals("8", message.getId());
+        assertEquals("line 1\r\nline 2", message.getPayload());
+
+        CodecFrame connected = codec.decode("\nCONNECTED\r\nversion:1.2\r\n\r\n\u0000");
+        assertEquals(CodecFrame.CONNECTED, connected.getType());
+        assertEquals("", connected.getPayload());
+    }
+
+    @Test
+    public void socketIoConnectsPongsAndCorrelatesAcks() {
+        SocketIoCodec codec = new SocketIoCodec();
+        codec.configure(options("namespace", "/chat", "event", "say"));
+
+        CodecFrame open = codec.decode("0{\"sid\":\"abc\",\"pingInterval\":25000}");
+        assertEquals("40/chat,", open.getReply());
+        assertFalse(codec.isReady());
+
+        CodecFrame connect = codec.decode("40/chat,{\"sid\":\"def\"}");
+        assertEquals(CodecFrame.CONNECTED, connect.getType());
+        assertTrue(codec.isReady());
+
+        assertEquals("3", codec.decode("2").getReply());
+
+        assertEquals("42/chat,12[\"say\",{\"a\":1}]", codec.encode("{\"a\":1}", "12"));
+
+        CodecFrame ack = codec.decode("43/chat,12[\"ok\"]");
+        assertEquals(CodecFrame.REPLY, ack.getType());
+        assertEquals("12", ack.getId());
+        assertEquals("[\"ok\"]", ack.getPayload());
+
+        CodecFrame event = codec.decode("42/chat,5[\"news\",1]");
+        assertEquals(CodecFrame.MESSAGE, event.getType());
+        assertEquals("43/chat,5[]", event.getReply());
+    }
+
+    @Test
+    public void jsonRpcCorrelatesTopLevelId() {
+        JsonRpcCodec codec = new JsonRpcCodec();
+        codec.configure(options("method", "sum"));
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"method\":\"sum\",\"params\":[1,2],\"id\":3}", codec.encode("[1,2]", "3"));
+
+        CodecFrame reply = codec.decode("{\"jsonrpc\":\"2.0\",\"result\":{\"id\":99},\"id\":3}");
+        assertEquals(CodecFrame.REPLY, reply.getType());
+        assertEquals("3", reply.getId());
+
+        CodecFrame error = codec.decode("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-1,\"message\":\"x\"},\"id\":\"4\"}");
+        assertEquals(CodecFrame.ERROR, error.getType());
+        assertEquals("4", error.getId());
+
+        CodecFrame notification = codec.decode("{\"jsonrpc\":\"2.0\",\"method\":\"tick\",\"params\":{\"id\":1}}");
+        assertEquals(CodecFrame.MESSAGE, notification.getType());
+        assertNull(notification.getId());
+
+        CodecFrame batch = codec.decode(" [{\"jsonrpc\":\"2.0\",\"result\":3,\"id\":3}]");
+        assertEquals(CodecFrame.CONTROL, batch.getType());
+        assertNull(batch.getId());
+    }
+}
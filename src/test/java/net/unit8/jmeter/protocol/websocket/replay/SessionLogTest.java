@@ -0,0 +1,118 @@
+package net.unit8.jmeter.protocol.websocket.replay;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the session log format
+ *
+ * @author kawasima
+ */
+public class SessionLogTest {
+    private static File createLog() throws Exception {
+        File file = File.createTempFile("session", ".wslog");
+        file.deleteOnExit();
+        file.delete();
+        return file;
+    }
+
+    @Test
+    public void recordsAreGroupedByConnection() throws Exception {
+        File file = createLog();
+        SessionRecorder recorder = new SessionRecorder(file);
+        long first = recorder.nextConnectionId();
+        long second = recorder.nextConnectionId();
+        recorder.record(SessionRecord.OPEN, first, "ws://localhost/a");
+        recorder.record(SessionRecord.OPEN, second, "ws://localhost/b");
+        recorder.record(SessionRecord.SENT, first, "hello");
+        recorder.record(SessionRecord.RECEIVED, first, "\u3053\u3093\u306b\u3061\u306f");
+        recorder.record(SessionRecord.SENT, second, "");
+        recorder.record(SessionRecord.CLOSE, first, null);
+        recorder.close();
+
+        SessionLog log = SessionLog.load(file);
+        assertEquals(2, log.size());
+
+        SessionLog.RecordedSession a = log.getSession(0);
+        assertEquals(first, a.getConnectionId());
+        assertEquals("ws://localhost/a", a.getUri());
+        assertEquals(1, a.getSentCount());
+        assertEquals(1, a.getReceivedCount());
+        assertEquals("hello", a.getFrames().get(0).getPayload());
+        assertEquals("\u3053\u3093\u306b\u3061\u306f", a.getFrames().get(1).getPayload());
+        assertTrue(a.getFrames().get(0).getOffset() <= a.getFrames().get(1).getOffset());
+
+        SessionLog.RecordedSession b = log.getSession(1);
+        assertEquals("ws://localhost/b", b.getUri());
+        assertEquals("", b.getFrames().get(0).getPayload());
+        assertSame(a, log.getSession(2));
+    }
+
+    @Test
+    public void appendContinuesIdsAndTimes() throws Exception {
+        File file = createLog();
+        SessionRecorder recorder = new SessionRecorder(file);
+        long first = recorder.nextConnectionId();
+        recorder.record(SessionRecord.SENT, first, "one");
+        recorder.close();
+
+        // The log was started a day ago.
+        long startTime = System.currentTimeMillis() - 86400000L;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(SessionRecorder.MAGIC.length + 1);
+            raf.writeLong(startTime);
+        } finally {
+            raf.close();
+        }
+
+        recorder = new SessionRecorder(file);
+        long second = recorder.nextConnectionId();
+        recorder.record(SessionRecord.SENT, second, "two");
+        recorder.close();
+
+        assertEquals(first + 1, second);
+        SessionLogReader reader = new SessionLogReader(file);
+        try {
+            SessionRecord one = reader.next();
+            SessionRecord two = reader.next();
+            assertEquals("one", one.getPayload());
+            assertEquals("two", two.getPayload());
+            // One second after the last record, not a day after the start.
+            assertTrue(two.getOffset() - one.getOffset() >= 1000000L);
+            assertTrue(two.getOffset() - one.getOffset() < 2000000L);
+            assertNull(reader.next());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void incompleteRecordIsDiscarded() throws Exception {
+        File file = createLog();
+        SessionRecorder recorder = new SessionRecorder(file);
+        long id = recorder.nextConnectionId();
+        recorder.record(SessionRecord.SENT, id, "complete");
+        recorder.record(SessionRecord.SENT, id, "incomplete");
+        recorder.close();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 3);
+        } finally {
+            raf.close();
+        }
+        assertEquals(1, SessionLog.load(file).getSession(0).getSentCount());
+
+        recorder = new SessionRecorder(file);
+        recorder.record(SessionRecord.SENT, id, "appended");
+        recorder.close();
+        SessionLog.RecordedSession session = SessionLog.load(file).getSession(0);
+        assertEquals(2, session.getSentCount());
+        assertEquals("appended", session.getFrames().get(1).getPayload());
+    }
+}
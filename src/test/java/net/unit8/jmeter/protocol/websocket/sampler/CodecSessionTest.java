@@ -0,0 +1,69 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import net.unit8.jmeter.protocol.websocket.codec.JsonRpcCodec;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the correlation of the frames to the pending request
+ *
+ * @author kawasima
+ */
+public class CodecSessionTest {
+    private static CodecSession jsonRpcSession(MessageCollector collector) {
+        JsonRpcCodec codec = new JsonRpcCodec();
+        Properties options = new Properties();
+        options.setProperty("method", "sum");
+        codec.configure(options);
+        return new CodecSession(codec, collector);
+    }
+
+    @Test
+    public void onlyTheReplyWithThePendingIdCompletes() throws Exception {
+        MessageCollector collector = new MessageCollector(MessageCollector.MODE_FIRST, null, null, 1);
+        CodecSession session = jsonRpcSession(collector);
+        collector.arm();
+        session.prepare("[1,2]");
+
+        // A notification, a response without an id, a batch and a late reply.
+        session.onFrame("{\"jsonrpc\":\"2.0\",\"method\":\"tick\"}");
+        session.onFrame("{\"jsonrpc\":\"2.0\",\"result\":0}");
+        session.onFrame("[{\"jsonrpc\":\"2.0\",\"result\":3,\"id\":1}]");
+        session.onFrame("{\"jsonrpc\":\"2.0\",\"result\":0,\"id\":0}");
+        assertFalse(collector.isComplete());
+
+        session.onFrame("{\"jsonrpc\":\"2.0\",\"result\":3,\"id\":1}");
+        assertTrue(collector.await(0L));
+        assertEquals(Arrays.asList("{\"jsonrpc\":\"2.0\",\"result\":3,\"id\":1}"), collector.getMessages());
+    }
+
+    @Test
+    public void errorWithoutIdFailsThePendingRequest() throws Exception {
+        MessageCollector collector = new MessageCollector(MessageCollector.MODE_FIRST, null, null, 1);
+        CodecSession session = jsonRpcSession(collector);
+        collector.arm();
+        session.prepare("[1,2]");
+
+        String error = "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32700,\"message\":\"Parse error\"},\"id\":null}";
+        session.onFrame(error);
+        assertTrue(collector.await(0L));
+        assertEquals(0, collector.getCount());
+        assertEquals(error, session.getError());
+    }
+
+    @Test
+    public void replyAfterReleaseIsIgnored() throws Exception {
+        MessageCollector collector = new MessageCollector(MessageCollector.MODE_FIRST, null, null, 1);
+        CodecSession session = jsonRpcSession(collector);
+        collector.arm();
+        session.prepare("[1,2]");
+        session.release();
+
+        session.onFrame("{\"jsonrpc\":\"2.0\",\"result\":3,\"id\":1}");
+        assertFalse(collector.isComplete());
+    }
+}
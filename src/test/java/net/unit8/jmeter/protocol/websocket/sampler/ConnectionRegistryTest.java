@@ -0,0 +1,107 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.eclipse.jetty.websocket.WebSocket;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the close handshakes of the teardown
+ *
+ * @author kawasima
+ */
+public class ConnectionRegistryTest {
+    /**
+     * A connection whose close() calls onClose at once, as Jetty does,
+     * and whose server answers later.
+     */
+    private static class StubConnection implements InvocationHandler {
+        final long answerDelay;
+        final boolean sendsCloseFrame;
+        volatile boolean open = true;
+        WebSocket.Connection connection;
+
+        StubConnection(long answerDelay, boolean sendsCloseFrame) {
+            this.answerDelay = answerDelay;
+            this.sendsCloseFrame = sendsCloseFrame;
+            this.connection = (WebSocket.Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{WebSocket.Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (method.getName().equals("equals")) {
+                return proxy == args[0];
+            }
+            if (method.getName().equals("isOpen")) {
+                return open;
+            }
+            if (method.getName().equals("close")) {
+                ConnectionRegistry.closed(connection);
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(answerDelay);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        if (sendsCloseFrame) {
+                            ConnectionRegistry.onControl(connection, ConnectionRegistry.OP_CLOSE);
+                        }
+                        open = false;
+                    }
+                }).start();
+            }
+            return null;
+        }
+    }
+
+    @Test
+    public void teardownWaitsForTheCloseFrames() throws Exception {
+        StubConnection first = new StubConnection(100L, true);
+        StubConnection second = new StubConnection(150L, true);
+        ConnectionRegistry.track(first.connection);
+        ConnectionRegistry.track(second.connection);
+
+        long start = System.currentTimeMillis();
+        ConnectionRegistry.closeAll();
+        assertTrue(System.currentTimeMillis() - start >= 140L);
+
+        String summary = ConnectionRegistry.getCloseSummary();
+        assertTrue(summary, summary.startsWith(
+                "Closed 2 of 2 connections, 0 without a close frame, 0 already closed, 0 still open."));
+        assertFalse(summary, summary.contains("min=0 "));
+        assertEquals(0, ConnectionRegistry.getOpenConnectionCount());
+    }
+
+    @Test
+    public void connectionShutWithoutCloseFrame() throws Exception {
+        StubConnection stub = new StubConnection(100L, false);
+        ConnectionRegistry.track(stub.connection);
+
+        ConnectionRegistry.closeAll();
+        String summary = ConnectionRegistry.getCloseSummary();
+        assertTrue(summary, summary.startsWith(
+                "Closed 1 of 1 connections, 1 without a close frame, 0 already closed, 0 still open."));
+    }
+
+    @Test
+    public void closedConnectionIsNotClosedAgain() throws Exception {
+        StubConnection stub = new StubConnection(0L, true);
+        stub.open = false;
+        ConnectionRegistry.track(stub.connection);
+
+        ConnectionRegistry.closeAll();
+        String summary = ConnectionRegistry.getCloseSummary();
+        assertTrue(summary, summary.startsWith(
+                "Closed 0 of 1 connections, 0 without a close frame, 1 already closed, 0 still open."));
+    }
+}
@@ -0,0 +1,58 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.eclipse.jetty.websocket.WebSocket;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the heap used by an idle connection on the load generator.
+ *
+ * Opens the given number of connections, each with a handler and a
+ * collector for one reply, and prints the heap growth per connection.
+ * The samplers themselves (their properties and per-mode state, e.g. the
+ * outbound queue) are not included.
+ *
+ * Usage: FootprintBenchmark [uri] [connections]
+ *
+ * @author kawasima
+ */
+public class FootprintBenchmark {
+    public static void main(String[] args) throws Exception {
+        URI uri = new URI(args.length > 0 ? args[0] : "ws://localhost:9090/");
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+
+        WebSocketClients.start();
+        long before = usedHeap();
+
+        List<WebSocket.Connection> connections = new ArrayList<WebSocket.Connection>(count);
+        for (int i = 0; i < count; i++) {
+            MessageCollector collector = new MessageCollector(MessageCollector.MODE_FIRST,
+                    WebSocketClients.compile("\"name\""), null, 1);
+            WebSocketHandler handler = new WebSocketHandler("connection-" + i, collector, null);
+            Future<WebSocket.Connection> future = WebSocketClients.getClient().open(uri, handler);
+            connections.add(future.get());
+        }
+
+        long after = usedHeap();
+        System.out.println("connections: " + connections.size());
+        System.out.println("heap used:   " + (after - before) / 1024 + " KB");
+        System.out.println("per connection: " + (after - before) / connections.size() + " bytes");
+
+        for (WebSocket.Connection connection : connections) {
+            connection.close();
+        }
+        WebSocketClients.stop();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,92 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the buckets and the percentiles of the histogram
+ *
+ * @author kawasima
+ */
+public class LatencyHistogramTest {
+    private static LatencyHistogram histogramOf(long... values) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value : values) {
+            histogram.record(value);
+        }
+        return histogram;
+    }
+
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0L, histogram.getCount());
+        assertEquals(0L, histogram.getMin());
+        assertEquals(0L, histogram.getMax());
+        assertEquals(0L, histogram.getMean());
+        assertEquals(0L, histogram.getPercentile(99.0));
+    }
+
+    @Test
+    public void valuesBelowOneSecondAreExact() {
+        assertEquals(999L, histogramOf(999L).getPercentile(50.0));
+        assertEquals(0L, histogramOf(0L).getPercentile(50.0));
+        assertEquals(1L, histogramOf(1L, 2L).getPercentile(50.0));
+    }
+
+    @Test
+    public void valuesFromOneSecondHave100msResolution() {
+        // 1000 and 1050 share the bucket [1000, 1099], reported by its upper bound.
+        assertEquals(1099L, histogramOf(1000L, 1050L, 2000L).getPercentile(50.0));
+        // The upper bound is capped by the max.
+        assertEquals(1050L, histogramOf(1000L, 1050L).getPercentile(100.0));
+        // The last coarse bucket is [59900, 59999].
+        assertEquals(59999L, histogramOf(59900L, 70000L).getPercentile(50.0));
+    }
+
+    @Test
+    public void valuesFromOneMinuteOverflowToTheMax() {
+        LatencyHistogram histogram = histogramOf(60000L, 120000L);
+        assertEquals(120000L, histogram.getPercentile(50.0));
+        assertEquals(120000L, histogram.getMax());
+        assertEquals(60000L, histogram.getMin());
+    }
+
+    @Test
+    public void percentilesUseTheNearestRank() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1L, histogram.getPercentile(0.0));
+        assertEquals(50L, histogram.getPercentile(50.0));
+        assertEquals(90L, histogram.getPercentile(90.0));
+        assertEquals(99L, histogram.getPercentile(99.0));
+        // The rank is rounded up, without interpolating between values.
+        assertEquals(100L, histogram.getPercentile(99.5));
+        assertEquals(100L, histogram.getPercentile(100.0));
+
+        histogram = histogramOf(10L, 20L, 30L);
+        assertEquals(20L, histogram.getPercentile(50.0));
+        assertEquals(30L, histogram.getPercentile(67.0));
+    }
+
+    @Test
+    public void negativeValuesCountAsZero() {
+        LatencyHistogram histogram = histogramOf(-5L, 10L);
+        assertEquals(0L, histogram.getMin());
+        assertEquals(5L, histogram.getMean());
+    }
+
+    @Test
+    public void resetForgetsTheValues() {
+        LatencyHistogram histogram = histogramOf(5L, 70000L);
+        histogram.reset();
+        assertEquals(0L, histogram.getCount());
+        assertEquals(0L, histogram.getPercentile(50.0));
+        histogram.record(7L);
+        assertEquals(7L, histogram.getMin());
+        assertEquals(7L, histogram.getMax());
+    }
+}
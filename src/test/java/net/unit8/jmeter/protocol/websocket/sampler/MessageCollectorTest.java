@@ -0,0 +1,183 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the receive modes of the collector
+ *
+ * @author kawasima
+ */
+public class MessageCollectorTest {
+    /*
+     * Offers the frames from another thread, as the callback thread does.
+     */
+    private static Thread offerLater(final MessageCollector collector, final long delay, final String... frames) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (String frame : frames) {
+                    collector.offer(frame);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void firstModeCompletesOnFirstMatchingFrame() throws Exception {
+        MessageCollector collector = new MessageCollector(MessageCollector.MODE_FIRST,
+                Pattern.compile("\"name\""), null, 1);
+        collector.arm();
+        Thread sender = offerLater(collector, 50L, "{\"other\":1}", "{\"name\":\"a\"}", "{\"name\":\"b\"}");
+
+        assertTrue(collector.await(5000L));
+        sender.join();
+        assertEquals(Arrays.asList("{\"name\":\"a\"}"), collector.getMessages());
+        assertTrue(collector.getFirstTime() > 0);
+        assertEquals(collector.getFirstTime(), collector.getLastTime());
+    }
+
+    @Test
+    public void countModeCompletesAfterExpectedFrames() throws Exception {
+        MessageCollector collector = new MessageCollector(MessageCollector.MODE_COUNT, null, null, 3);
+        collector.arm();
+        Thread sender = offerLater(collector, 50L, "a", "b", "c", "d");
+
+        assertTrue(collector.await(5000L));
+        sender.join();
+        assertEquals(Arrays.asList("a", "b", "c"), collector.getMessages());
+    }
+
+    @Test
+    public void terminatorModeKeepsFramesUpToTerminator() throws Exception {
+        MessageCollector collector = new MessageCollector(MessageCollector.MODE_TERMINATOR,
+                Pattern.compile("^data"), Pattern.compile("^end$"), 1);
+        collector.arm();
+        Thread sender = offerLater(collector, 50L, "data 1", "noise", "data 2", "end", "data 3");
+
+        assertTrue(collector.await(5000L));
+        sender.join();
+        // The terminator is kept even if it doesn't match the pattern.
+        assertEquals(Arrays.asList("data 1", "data 2", "end"), collector.getMessages());
+    }
+
+    @Test
+    public void windowModeCollectsUntilWindowElapses() throws Exception {
+        MessageCollector collector = new MessageCollector(MessageCollector.MODE_WINDOW, null, null, 1);
+        collector.arm();
+        Thread sender = offerLater(collector, 20L, "a", "b");
+
+        long start = System.currentTimeMillis();
+        assertTrue(collector.await(300L));
+        assertTrue(System.currentTimeMillis() - start >= 290L);
+        sender.join();
+        assertEquals(Arrays.asList("a", "b"), collector.getMessages());
+
+        // Frames after the window are ignored.
+        collector.offer("c");
+        assertEquals(2, collector.getCount());
+    }
+
+    @Test
+    public void emptyWindowIsNotSatisfied() throws Exception {
+        MessageCollector collector = new MessageCollector(MessageCollector.MODE_WINDOW, null, null, 1);
+        collector.arm();
+        assertFalse(collector.await(50L));
+    }
+
+    @Test
+    public void timeoutReturnsFramesCollectedSoFar() throws Exception {
+        MessageCollector collector = new MessageCollector(MessageCollector.MODE_COUNT, null, null, 5);
+        collector.arm();
+        collector.offer("a");
+        collector.offer("b");
+
+        assertFalse(collector.await(50L));
+        assertFalse(collector.isComplete());
+        assertEquals(Arrays.asList("a", "b"), collector.getMessages());
+    }
+
+    @Test
+    public void abortCompletesWithoutFrames() throws Exception {
+        final MessageCollector collector = new MessageCollector(MessageCollector.MODE_FIRST, null, null, 1);
+        collector.arm();
+        Thread aborter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50L);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                collector.abort();
+            }
+        });
+        aborter.start();
+
+        long start = System.currentTimeMillis();
+        assertTrue(collector.await(5000L));
+        assertTrue(System.currentTimeMillis() - start < 5000L);
+        aborter.join();
+        assertEquals(0, collector.getCount());
+    }
+
+    @Test
+    public void framesOutsideSampleAreIgnored() throws Exception {
+        MessageCollector collector = new MessageCollector(MessageCollector.MODE_COUNT, null, null, 2);
+        collector.offer("before");
+        collector.arm();
+        collector.offer("a");
+        collector.disarm();
+        collector.offer("between");
+        assertEquals(Arrays.asList("a"), collector.getMessages());
+
+        // Arming again discards the frames of the previous sample.
+        collector.arm();
+        assertEquals(0, collector.getCount());
+        assertEquals(0L, collector.getFirstTime());
+    }
+
+    @Test
+    public void encodedLengthMatchesJoinedFrames() throws Exception {
+        MessageCollector collector = new MessageCollector(MessageCollector.MODE_COUNT, null, null, 3);
+        assertEquals(0L, collector.getEncodedLength("UTF-8"));
+        collector.arm();
+        collector.offer("ab\u3042");
+        collector.offer("\ud83d\ude00");
+        collector.offer("x");
+
+        String joined = "ab\u3042\n\ud83d\ude00\nx";
+        assertEquals(joined.getBytes("UTF-8").length, collector.getEncodedLength("UTF-8"));
+        assertEquals(joined.getBytes("UTF-16BE").length, collector.getEncodedLength("UTF-16BE"));
+        assertEquals(joined.length(), collector.getEncodedLength(""));
+    }
+
+    @Test
+    public void messageListIsAllocatedByFirstMatchingFrame() throws Exception {
+        Field messages = MessageCollector.class.getDeclaredField("messages");
+        messages.setAccessible(true);
+
+        MessageCollector collector = new MessageCollector(MessageCollector.MODE_FIRST,
+                Pattern.compile("match"), null, 1);
+        collector.arm();
+        collector.offer("other");
+        assertNull(messages.get(collector));
+        assertTrue(collector.getMessages().isEmpty());
+
+        collector.offer("match");
+        assertNotNull(messages.get(collector));
+        assertEquals(1, collector.getCount());
+    }
+}
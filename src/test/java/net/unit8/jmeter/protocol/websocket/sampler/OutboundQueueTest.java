@@ -0,0 +1,182 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.eclipse.jetty.websocket.WebSocket;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the full-queue policies and the statistics of the outbound queue
+ *
+ * @author kawasima
+ */
+public class OutboundQueueTest {
+    /**
+     * A connection whose sendMessage blocks until it is released.
+     */
+    private static class StubConnection implements InvocationHandler {
+        final List<String> sent = new CopyOnWriteArrayList<String>();
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch release;
+        final long delay;
+
+        StubConnection(boolean blocked, long delay) {
+            this.release = new CountDownLatch(blocked ? 1 : 0);
+            this.delay = delay;
+        }
+
+        WebSocket.Connection connection() {
+            return (WebSocket.Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{WebSocket.Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("sendMessage") && args.length == 1) {
+                sending.countDown();
+                release.await();
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                sent.add((String) args[0]);
+                return null;
+            }
+            if (method.getName().equals("isOpen")) {
+                return true;
+            }
+            return null;
+        }
+    }
+
+    private static void awaitSent(OutboundQueue queue, StubConnection stub, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (queue.getSentCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(count, stub.sent.size());
+    }
+
+    /*
+     * Fills a queue of one message while the sender is blocked on the first one.
+     */
+    private static OutboundQueue fullQueue(StubConnection stub) throws Exception {
+        OutboundQueue queue = new OutboundQueue(stub.connection(), 1);
+        assertTrue(queue.offer("in flight", OutboundQueue.POLICY_FAIL, 0L));
+        assertTrue(stub.sending.await(5, TimeUnit.SECONDS));
+        assertTrue(queue.offer("queued", OutboundQueue.POLICY_FAIL, 0L));
+        assertEquals(1, queue.getDepth());
+        return queue;
+    }
+
+    @Test
+    public void messagesAreSentInOrder() throws Exception {
+        StubConnection stub = new StubConnection(false, 0L);
+        OutboundQueue queue = new OutboundQueue(stub.connection(), 100);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(queue.offer("m" + i, OutboundQueue.POLICY_WAIT, 1000L));
+        }
+        awaitSent(queue, stub, 50);
+        for (int i = 0; i < 50; i++) {
+            assertEquals("m" + i, stub.sent.get(i));
+        }
+        assertEquals(50L, queue.getSentCount());
+        assertEquals(0L, queue.getErrorCount());
+    }
+
+    @Test
+    public void dropPolicyDiscardsWhenFull() throws Exception {
+        StubConnection stub = new StubConnection(true, 0L);
+        OutboundQueue queue = fullQueue(stub);
+
+        assertFalse(queue.offer("dropped", OutboundQueue.POLICY_DROP, 1000L));
+        assertEquals(1L, queue.getDroppedCount());
+
+        stub.release.countDown();
+        awaitSent(queue, stub, 2);
+        assertEquals("queued", stub.sent.get(1));
+    }
+
+    @Test
+    public void droppedResultIsFailure() {
+        SampleResult res = new SampleResult();
+        OutboundQueue.setDroppedResult(res);
+        assertFalse(res.isSuccessful());
+        assertEquals("503", res.getResponseCode());
+        assertEquals("Dropped (outbound queue is full).", res.getResponseMessage());
+    }
+
+    @Test
+    public void failPolicyThrowsWhenFull() throws Exception {
+        StubConnection stub = new StubConnection(true, 0L);
+        OutboundQueue queue = fullQueue(stub);
+        try {
+            queue.offer("rejected", OutboundQueue.POLICY_FAIL, 1000L);
+            fail("The queue is full.");
+        } catch (IOException expected) {
+            // The message isn't dropped silently.
+        } finally {
+            stub.release.countDown();
+        }
+        assertEquals(0L, queue.getDroppedCount());
+    }
+
+    @Test
+    public void waitPolicyBlocksUntilTimeout() throws Exception {
+        StubConnection stub = new StubConnection(true, 0L);
+        OutboundQueue queue = fullQueue(stub);
+        long start = System.currentTimeMillis();
+        try {
+            queue.offer("late", OutboundQueue.POLICY_WAIT, 200L);
+            fail("The queue is still full.");
+        } catch (IOException expected) {
+            assertTrue(System.currentTimeMillis() - start >= 190L);
+        } finally {
+            stub.release.countDown();
+        }
+    }
+
+    @Test
+    public void waitPolicyEnqueuesWhenSpaceIsFreed() throws Exception {
+        final StubConnection stub = new StubConnection(true, 0L);
+        OutboundQueue queue = fullQueue(stub);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100L);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                stub.release.countDown();
+            }
+        }).start();
+
+        assertTrue(queue.offer("waited", OutboundQueue.POLICY_WAIT, 5000L));
+        awaitSent(queue, stub, 3);
+        assertEquals("waited", stub.sent.get(2));
+    }
+
+    @Test
+    public void timeToWireIncludesTheWrite() throws Exception {
+        StubConnection stub = new StubConnection(false, 100L);
+        OutboundQueue queue = new OutboundQueue(stub.connection(), 10);
+        queue.offer("a", OutboundQueue.POLICY_WAIT, 1000L);
+        queue.offer("b", OutboundQueue.POLICY_WAIT, 1000L);
+        awaitSent(queue, stub, 2);
+
+        // b waits for the write of a, then its own.
+        assertTrue(queue.getMaxTimeToWire() >= 190L);
+        assertTrue(queue.getAverageTimeToWire() >= 95L);
+        assertTrue(queue.getAverageTimeToWire() <= queue.getMaxTimeToWire());
+    }
+}
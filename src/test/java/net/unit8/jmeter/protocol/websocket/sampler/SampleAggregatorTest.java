@@ -0,0 +1,95 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the summary results of the aggregator
+ *
+ * @author kawasima
+ */
+public class SampleAggregatorTest {
+    private static SampleResult exchange(long start, long elapsed, long latency, int bytes, boolean ok) {
+        SampleResult res = new SampleResult();
+        res.setStampAndTime(start, elapsed);
+        res.setLatency(latency);
+        res.setBytes(bytes);
+        res.setSuccessful(ok);
+        return res;
+    }
+
+    @Test
+    public void summaryCountsExchangesAndErrors() {
+        SampleAggregator aggregator = new SampleAggregator(1000L, 10);
+        aggregator.add(exchange(1000L, 10L, 4L, 100, true));
+        aggregator.add(exchange(1010L, 30L, 6L, 200, true));
+        aggregator.add(exchange(1040L, 50L, 8L, 0, false));
+        assertEquals(3, aggregator.getCount());
+
+        SampleResult summary = aggregator.flush("label");
+        assertEquals(3, summary.getSampleCount());
+        assertEquals(1, summary.getErrorCount());
+        assertFalse(summary.isSuccessful());
+        assertEquals("1 of 3 exchanges failed.", summary.getResponseMessage());
+        // Sums, so that listeners dividing by the sample count get the means.
+        assertEquals(90L, summary.getTime());
+        assertEquals(18L, summary.getLatency());
+        assertEquals(300, summary.getBytes());
+        assertEquals(1000L, summary.getStartTime());
+
+        String data = summary.getResponseDataAsString();
+        assertTrue(data.contains("Count: 3\n"));
+        assertTrue(data.contains("Errors: 1\n"));
+        assertTrue(data.contains("Elapsed-Max: 50\n"));
+        assertTrue(data.contains("Latency-Min: 4\n"));
+
+        // The next interval starts empty.
+        assertEquals(0, aggregator.getCount());
+        assertFalse(aggregator.isDue(5000L));
+    }
+
+    @Test
+    public void successfulSummary() {
+        SampleAggregator aggregator = new SampleAggregator(1000L, 10);
+        aggregator.add(exchange(1000L, 10L, 4L, 100, true));
+        SampleResult summary = aggregator.flush("label");
+        assertTrue(summary.isSuccessful());
+        assertEquals(0, summary.getErrorCount());
+        assertEquals(0, summary.getSubResults().length);
+    }
+
+    @Test
+    public void failureDetailsAreCapped() {
+        SampleAggregator aggregator = new SampleAggregator(1000L, 2);
+        for (int i = 0; i < 5; i++) {
+            aggregator.add(exchange(1000L + i, 10L, 0L, 0, false));
+        }
+        SampleResult summary = aggregator.flush("label");
+        assertEquals(5, summary.getErrorCount());
+        assertEquals(2, summary.getSubResults().length);
+    }
+
+    @Test
+    public void intervalStartsWithTheFirstExchange() {
+        SampleAggregator aggregator = new SampleAggregator(1000L, 2);
+        assertFalse(aggregator.isDue(10000L));
+        aggregator.add(exchange(5000L, 10L, 0L, 0, true));
+        assertFalse(aggregator.isDue(5999L));
+        assertTrue(aggregator.isDue(6000L));
+    }
+
+    @Test
+    public void unhealthyExchangesAreCounted() {
+        SampleAggregator aggregator = new SampleAggregator(1000L, 2);
+        SampleResult flagged = exchange(1000L, 10L, 0L, 0, true);
+        flagged.setResponseHeaders(GeneratorHealth.HEADER + ": pause=80ms\n");
+        aggregator.add(flagged);
+        aggregator.add(exchange(1010L, 10L, 0L, 0, true));
+
+        SampleResult summary = aggregator.flush("label");
+        assertEquals(GeneratorHealth.HEADER + ": 1 of 2 exchanges\n", summary.getResponseHeaders());
+        assertTrue(summary.getResponseDataAsString().contains("Unhealthy: 1\n"));
+    }
+}
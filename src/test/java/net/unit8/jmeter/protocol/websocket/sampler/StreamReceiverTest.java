@@ -0,0 +1,96 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the streaming match and digest
+ *
+ * @author kawasima
+ */
+public class StreamReceiverTest {
+    private static byte[] bytes(String s) throws Exception {
+        return s.getBytes("UTF-8");
+    }
+
+    /*
+     * Feeds the fragments as one message, the last one being final.
+     */
+    private static boolean receive(StreamReceiver receiver, String... fragments) throws Exception {
+        receiver.arm();
+        for (int i = 0; i < fragments.length; i++) {
+            // Pads the fragment, so that the offset is exercised too.
+            byte[] data = bytes("##" + fragments[i]);
+            receiver.onFragment(data, 2, data.length - 2, i == fragments.length - 1);
+        }
+        return receiver.await(1000L);
+    }
+
+    @Test
+    public void matchWithinOneFragment() throws Exception {
+        StreamReceiver receiver = new StreamReceiver(bytes("\"done\""));
+        assertTrue(receive(receiver, "{\"status\":\"done\"}"));
+        assertTrue(receiver.isMatched());
+        assertEquals(1, receiver.getFrames());
+        assertEquals(17L, receiver.getBytes());
+    }
+
+    @Test
+    public void matchSplitAcrossTwoFragments() throws Exception {
+        StreamReceiver receiver = new StreamReceiver(bytes("END"));
+        assertTrue(receive(receiver, "payload E", "ND trailer"));
+        assertTrue(receiver.isMatched());
+    }
+
+    @Test
+    public void matchSplitAcrossThreeFragments() throws Exception {
+        StreamReceiver receiver = new StreamReceiver(bytes("TERMINATOR"));
+        assertTrue(receive(receiver, "xxTERM", "INA", "TORyy"));
+        assertEquals(3, receiver.getFrames());
+    }
+
+    @Test
+    public void falsePrefixRestartsTheMatch() throws Exception {
+        // ABAB matches a prefix of the pattern, then fails on the next A,
+        // and the match restarts from the failure table instead of the start.
+        StreamReceiver receiver = new StreamReceiver(bytes("ABABC"));
+        assertTrue(receive(receiver, "ABA", "BAB", "C"));
+
+        receiver = new StreamReceiver(bytes("AAB"));
+        assertTrue(receive(receiver, "A", "A", "AB"));
+    }
+
+    @Test
+    public void partialMatchAtTheEndIsNotAMatch() throws Exception {
+        StreamReceiver receiver = new StreamReceiver(bytes("END"));
+        assertFalse(receive(receiver, "E", "N"));
+        assertTrue(receiver.isComplete());
+        assertFalse(receiver.isMatched());
+
+        // The state of the search doesn't leak into the next message.
+        assertFalse(receive(receiver, "D"));
+    }
+
+    @Test
+    public void digestCoversAllFragments() throws Exception {
+        StreamReceiver receiver = new StreamReceiver(null);
+        assertTrue(receive(receiver, "hello", " ", "world"));
+        assertEquals("2aae6c35c94fcfb415dbe95f408b9ce91ee846ed", receiver.getHash());
+        assertEquals(11L, receiver.getBytes());
+
+        // Arming again resets the digest.
+        assertTrue(receive(receiver, "abc"));
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", receiver.getHash());
+    }
+
+    @Test
+    public void incompleteMessageTimesOut() throws Exception {
+        StreamReceiver receiver = new StreamReceiver(null);
+        receiver.arm();
+        byte[] data = bytes("part");
+        receiver.onFragment(data, 0, data.length, false);
+        assertFalse(receiver.await(50L));
+        assertNull(receiver.getHash());
+    }
+}
@@ -0,0 +1,61 @@
+package net.unit8.jmeter.protocol.websocket.sampler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the close handshake of the session
+ *
+ * @author kawasima
+ */
+public class WebSocketSessionTest {
+    private static final byte OP_CLOSE = 0x08;
+    private static final byte OP_PING = 0x09;
+
+    /*
+     * Builds the payload of a close frame, padded so that the offset is exercised too.
+     */
+    private static byte[] closePayload(int code, String reason) throws Exception {
+        byte[] text = reason.getBytes("UTF-8");
+        byte[] data = new byte[text.length + 4];
+        data[2] = (byte) (code >> 8);
+        data[3] = (byte) code;
+        System.arraycopy(text, 0, data, 4, text.length);
+        return data;
+    }
+
+    @Test
+    public void closeFrameOfTheServerCompletesTheHandshake() throws Exception {
+        WebSocketSession session = new WebSocketSession("test", 1);
+        byte[] data = closePayload(4001, "bye \u3042");
+        assertFalse(session.onControl(OP_CLOSE, data, 2, data.length - 2));
+
+        assertTrue(session.awaitClose(0L));
+        assertEquals(4001, session.getCloseCode());
+        assertEquals("bye \u3042", session.getCloseReason());
+    }
+
+    @Test
+    public void closeFrameWithoutStatus() throws Exception {
+        WebSocketSession session = new WebSocketSession("test", 1);
+        session.onControl(OP_CLOSE, new byte[0], 0, 0);
+        assertTrue(session.awaitClose(0L));
+        assertEquals(1005, session.getCloseCode());
+        assertNull(session.getCloseReason());
+    }
+
+    @Test
+    public void onCloseAloneDoesNotCompleteTheHandshake() throws Exception {
+        // Connection.close() calls onClose before the server has answered.
+        WebSocketSession session = new WebSocketSession("test", 1);
+        session.onControl(OP_PING, new byte[0], 0, 0);
+        session.onClose(1000, "our reason");
+        assertTrue(session.isClosed());
+
+        long start = System.currentTimeMillis();
+        assertFalse(session.awaitClose(100L));
+        assertTrue(System.currentTimeMillis() - start >= 90L);
+        assertEquals(0, session.getCloseCode());
+    }
+}